@@ -7,8 +7,17 @@ package de.schlichtherle.truezip.crypto;
 import de.schlichtherle.truezip.io.Streams;
 import de.schlichtherle.truezip.rof.DecoratingReadOnlyFile;
 import de.schlichtherle.truezip.rof.ReadOnlyFile;
+import de.schlichtherle.truezip.util.ThreadGroups;
 import java.io.IOException;
 import static java.lang.Math.min;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import libtruezip.lcrypto.crypto.Mac;
 
 /**
@@ -21,6 +30,19 @@ import libtruezip.lcrypto.crypto.Mac;
  * again after you have finished working with an instance of this class,
  * you should synchronize their file pointers using the pattern as described
  * in the base class {@link DecoratingReadOnlyFile}.
+ * <p>
+ * Because counter mode allows to decrypt any block independently, large
+ * reads may get decrypted in parallel on multiple threads.
+ * This is disabled by default and gets enabled by setting the system
+ * property {@code de.schlichtherle.truezip.crypto.CipherReadOnlyFile.decrypterThreads}
+ * to a number greater than one.
+ * The size of the window for reading ahead the encrypted data gets read
+ * from the system property
+ * {@code de.schlichtherle.truezip.crypto.CipherReadOnlyFile.windowSize}.
+ * It defaults to one MiB if parallel decryption is enabled and to
+ * {@link Streams#BUFFER_SIZE} otherwise.
+ * Parallel decryption requires that the subclass implements
+ * {@link #newCipher()}.
  *
  * @see     CipherOutputStream
  * @author  Christian Schlichtherle
@@ -48,6 +70,33 @@ public abstract class CipherReadOnlyFile extends DecoratingReadOnlyFile {
 
     private static final long INVALID = Long.MIN_VALUE;
 
+    /**
+     * The maximum number of threads for decrypting a single read.
+     * This gets read from the system property
+     * {@code de.schlichtherle.truezip.crypto.CipherReadOnlyFile.decrypterThreads}
+     * and defaults to one, which means that all data gets decrypted by the
+     * current thread.
+     */
+    static final int DECRYPTER_THREADS = Math.max(1, Integer.getInteger(
+            CipherReadOnlyFile.class.getName() + ".decrypterThreads", 1));
+
+    /**
+     * The size of the window for reading ahead the encrypted data.
+     * This gets read from the system property
+     * {@code de.schlichtherle.truezip.crypto.CipherReadOnlyFile.windowSize}
+     * and defaults to one MiB if parallel decryption is enabled and to
+     * {@link Streams#BUFFER_SIZE} otherwise.
+     */
+    static final int WINDOW_SIZE = Math.max(1, Integer.getInteger(
+            CipherReadOnlyFile.class.getName() + ".windowSize",
+            1 < DECRYPTER_THREADS ? 1024 * 1024 : Streams.BUFFER_SIZE));
+
+    /**
+     * The minimum number of bytes to decrypt per thread, which is {@value}.
+     * Smaller chunks do not pay off the thread handoff.
+     */
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
     /** Start offset of the encrypted data. */
     private long start;
 
@@ -82,6 +131,13 @@ public abstract class CipherReadOnlyFile extends DecoratingReadOnlyFile {
     /** The buffer for the decrypted file data. */
     private byte[] block;
 
+    /**
+     * The additional ciphers for decrypting in parallel or {@code null} if
+     * not yet created.
+     * An empty array means that parallel decryption is not supported.
+     */
+    private SeekableBlockCipher[] ciphers;
+
     /**
      * Creates a read only file for transparent random read access to an
      * encrypted file.
@@ -131,7 +187,7 @@ public abstract class CipherReadOnlyFile extends DecoratingReadOnlyFile {
 
         final int blockSize = cipher.getBlockSize();
         this.block = new byte[blockSize];
-        this.buffer = new byte[(Streams.BUFFER_SIZE / blockSize) * blockSize]; // round down to multiple of block size
+        this.buffer = new byte[Math.max(1, WINDOW_SIZE / blockSize) * blockSize]; // round down to multiple of block size
 
         assert this.buffer.length % blockSize == 0;
     }
@@ -147,6 +203,21 @@ public abstract class CipherReadOnlyFile extends DecoratingReadOnlyFile {
             throw new IOException("cipher read only file is not in open state");
     }
 
+    /**
+     * Returns a new seekable block cipher which is initialized exactly like
+     * the cipher which has been passed to
+     * {@link #init(SeekableBlockCipher, long, long)}.
+     * The returned cipher gets used for decrypting in parallel.
+     * <p>
+     * The implementation in the class {@link CipherReadOnlyFile} returns
+     * {@code null}, which means that parallel decryption is not supported.
+     *
+     * @return A new seekable block cipher or {@code null}.
+     */
+    protected SeekableBlockCipher newCipher() {
+        return null;
+    }
+
     /**
      * Returns the authentication code of the encrypted data in this cipher
      * read-only file using the given Message Authentication Code (MAC) object.
@@ -234,12 +305,19 @@ public abstract class CipherReadOnlyFile extends DecoratingReadOnlyFile {
             while (total + blockSize <= remaining && pos + blockSize <= length) {
                 assert pos % blockSize == 0;
                 positionBuffer();
-                cipher.setBlockCounter(blockCounter++);
                 final int bufferPos = (int) (pos - bufferStart);
-                final int blockLimit = cipher.processBlock(
+                // Process all complete blocks in the window at once.
+                final int blocks = (int) min(
+                        min(remaining - total, length - pos),
+                        buffer.length - bufferPos) / blockSize;
+                assert 0 < blocks;
+                final int blockLimit = processBlocks(
+                        cipher, blockCounter,
                         buffer, bufferPos,
-                        dst, offset + total);
-                assert blockLimit == blockSize;
+                        dst, offset + total,
+                        blocks);
+                assert blockLimit == blocks * blockSize;
+                blockCounter += blocks;
                 total += blockLimit;
                 pos += blockLimit;
             }
@@ -294,9 +372,124 @@ public abstract class CipherReadOnlyFile extends DecoratingReadOnlyFile {
     @Override
     public void close() throws IOException {
         cipher = null;
+        ciphers = null;
         delegate.close();
     }
 
+    /**
+     * Decrypts the given number of consecutive blocks, starting with the
+     * block with the given index.
+     * If the data is large enough and parallel decryption is enabled and
+     * supported, then the blocks get split into chunks which get decrypted
+     * on multiple threads.
+     * The current thread decrypts the last chunk.
+     * If the current thread gets interrupted while waiting for the other
+     * threads, then it keeps waiting and restores its interrupt status
+     * before returning.
+     *
+     * @param  cipher the cipher for the current thread.
+     * @param  blockCounter the index of the first block.
+     * @param  in the array containing the encrypted data.
+     * @param  inOff the offset into the input array where the data starts.
+     * @param  out the array for the decrypted data.
+     * @param  outOff the offset into the output array where the data starts.
+     * @param  blocks the number of blocks to decrypt.
+     * @return The number of bytes decrypted.
+     */
+    private int processBlocks(
+            final SeekableBlockCipher cipher,
+            final long blockCounter,
+            final byte[] in,
+            final int inOff,
+            final byte[] out,
+            final int outOff,
+            final int blocks) {
+        final int blockSize = cipher.getBlockSize();
+        final int chunks = Math.min(DECRYPTER_THREADS,
+                blocks * blockSize / MIN_CHUNK_SIZE);
+        final SeekableBlockCipher[] ciphers;
+        if (1 >= chunks || (ciphers = getCiphers()).length < chunks - 1) {
+            cipher.setBlockCounter(blockCounter);
+            return SICSeekableBlockCipher.processBlocks(
+                    cipher, in, inOff, out, outOff, blocks);
+        }
+
+        final class Chunk implements Callable<Integer> {
+            final SeekableBlockCipher cipher;
+            final int start, end;
+
+            Chunk(final SeekableBlockCipher cipher, final int c) {
+                this.cipher = cipher;
+                this.start = (int) ((long) blocks * c / chunks);
+                this.end = (int) ((long) blocks * (c + 1) / chunks);
+            }
+
+            @Override
+            public Integer call() {
+                final int off = start * blockSize;
+                cipher.setBlockCounter(blockCounter + start);
+                return SICSeekableBlockCipher.processBlocks(
+                        cipher,
+                        in, inOff + off,
+                        out, outOff + off,
+                        end - start);
+            }
+        } // Chunk
+
+        final ExecutorService executor = Boot.executor;
+        final List<Future<Integer>> results
+                = new ArrayList<Future<Integer>>(chunks - 1);
+        for (int c = 0; c < chunks - 1; c++)
+            results.add(executor.submit(new Chunk(ciphers[c], c)));
+        int total = new Chunk(cipher, chunks - 1).call();
+        // Wait for all chunks uninterruptibly because they are writing to
+        // the output array and using the additional ciphers.
+        boolean interrupted = false;
+        try {
+            for (final Future<Integer> result : results) {
+                while (true) {
+                    try {
+                        total += result.get();
+                        break;
+                    } catch (final InterruptedException ex) {
+                        interrupted = true;
+                    } catch (final ExecutionException ex) {
+                        final Throwable cause = ex.getCause();
+                        if (cause instanceof RuntimeException)
+                            throw (RuntimeException) cause;
+                        if (cause instanceof Error)
+                            throw (Error) cause;
+                        throw new AssertionError(cause);
+                    }
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt(); // restore
+        }
+        assert total == blocks * blockSize;
+        return total;
+    }
+
+    /**
+     * Returns the additional ciphers for decrypting in parallel.
+     * The array is empty if parallel decryption is not supported.
+     */
+    private SeekableBlockCipher[] getCiphers() {
+        SeekableBlockCipher[] ciphers = this.ciphers;
+        if (null == ciphers) {
+            ciphers = new SeekableBlockCipher[DECRYPTER_THREADS - 1];
+            for (int i = 0; i < ciphers.length; i++) {
+                if (null == (ciphers[i] = newCipher())) {
+                    ciphers = new SeekableBlockCipher[0];
+                    break;
+                }
+            }
+            this.ciphers = ciphers;
+        }
+        return ciphers;
+    }
+
     /**
      * Positions the block with the decrypted data for partial reading so that
      * it contains the current virtual file pointer in the encrypted file.
@@ -377,4 +570,21 @@ public abstract class CipherReadOnlyFile extends DecoratingReadOnlyFile {
             throw ex;
         }
     }
+
+    /** A static data utility class used for lazy initialization. */
+    private static final class Boot {
+        static final ExecutorService executor
+                = Executors.newCachedThreadPool(new DecrypterThreadFactory());
+    } // Boot
+
+    private static final class DecrypterThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(
+                    ThreadGroups.getServerThreadGroup(), r,
+                    CipherReadOnlyFile.class.getName() + ".DecrypterThread");
+            thread.setDaemon(true);
+            return thread;
+        }
+    } // DecrypterThreadFactory
 }
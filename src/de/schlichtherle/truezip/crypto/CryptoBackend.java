@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.crypto;
+
+import java.util.Locale;
+import libtruezip.lcrypto.crypto.BlockCipher;
+import libtruezip.lcrypto.crypto.Mac;
+import libtruezip.lcrypto.crypto.digests.SHA1Digest;
+import libtruezip.lcrypto.crypto.digests.SHA256Digest;
+import libtruezip.lcrypto.crypto.engines.AESFastEngine;
+import libtruezip.lcrypto.crypto.macs.HMac;
+import libtruezip.lcrypto.crypto.params.KeyParameter;
+
+/**
+ * Provides the AES engines and the HMACs for the RAES and WinZip AES
+ * encryption.
+ * <p>
+ * The {@link #JCE} backend uses the Java Cryptography Extension, so it
+ * benefits from the intrinsics of the JVM for the AES and SHA instructions
+ * of the CPU.
+ * The {@link #LCRYPTO} backend uses the lightweight crypto API which is
+ * bundled with TrueZIP.
+ * Both backends produce identical results.
+ * <p>
+ * The {@linkplain #get() current backend} gets read from the system
+ * property {@code de.schlichtherle.truezip.crypto.CryptoBackend}, which may
+ * be either {@code JCE} or {@code LCRYPTO}.
+ * If this property is not set, the JCE backend gets used if it supports
+ * AES with 256 bit keys, HMAC-SHA-1 and HMAC-SHA-256.
+ * Otherwise, the LCRYPTO backend gets used.
+ *
+ * @author Christian Schlichtherle
+ */
+public enum CryptoBackend {
+
+    /** Uses the lightweight crypto API which is bundled with TrueZIP. */
+    LCRYPTO {
+        @Override
+        public BlockCipher newAesEngine() {
+            return new AESFastEngine();
+        }
+
+        @Override
+        public Mac newHMacSha1() {
+            return new HMac(new SHA1Digest());
+        }
+
+        @Override
+        public Mac newHMacSha256() {
+            return new HMac(new SHA256Digest());
+        }
+    },
+
+    /** Uses the Java Cryptography Extension. */
+    JCE {
+        @Override
+        public BlockCipher newAesEngine() {
+            return new JceAesEngine();
+        }
+
+        @Override
+        public Mac newHMacSha1() {
+            return new JceMac("HmacSHA1", "SHA-1/HMAC");
+        }
+
+        @Override
+        public Mac newHMacSha256() {
+            return new JceMac("HmacSHA256", "SHA-256/HMAC");
+        }
+    };
+
+    /**
+     * Returns the current crypto backend.
+     *
+     * @return The current crypto backend.
+     */
+    public static CryptoBackend get() {
+        return Boot.backend;
+    }
+
+    /**
+     * Returns a new AES engine.
+     * The engine supports 128, 192 and 256 bit keys.
+     *
+     * @return A new AES engine.
+     */
+    public abstract BlockCipher newAesEngine();
+
+    /**
+     * Returns a new HMAC-SHA-1.
+     *
+     * @return A new HMAC-SHA-1.
+     */
+    public abstract Mac newHMacSha1();
+
+    /**
+     * Returns a new HMAC-SHA-256.
+     *
+     * @return A new HMAC-SHA-256.
+     */
+    public abstract Mac newHMacSha256();
+
+    /** A static data utility class used for lazy initialization. */
+    private static final class Boot {
+        static final CryptoBackend backend;
+        static {
+            backend = create();
+        }
+
+        private static CryptoBackend create() {
+            final String name = System.getProperty(
+                    CryptoBackend.class.getName());
+            if (null != name)
+                return valueOf(name.toUpperCase(Locale.ENGLISH));
+            return isAvailable(JCE) ? JCE : LCRYPTO;
+        }
+
+        private static boolean isAvailable(final CryptoBackend backend) {
+            try {
+                backend.newAesEngine().init(true, new KeyParameter(new byte[32]));
+                backend.newHMacSha1().init(new KeyParameter(new byte[20]));
+                backend.newHMacSha256().init(new KeyParameter(new byte[32]));
+                return true;
+            } catch (final RuntimeException notAvailable) {
+                return false;
+            }
+        }
+    } // Boot
+}
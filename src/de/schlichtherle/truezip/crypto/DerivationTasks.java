@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.crypto;
+
+import de.schlichtherle.truezip.util.ThreadGroups;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the independent tasks of a key derivation function in parallel.
+ *
+ * @author Christian Schlichtherle
+ */
+final class DerivationTasks {
+
+    /**
+     * Whether or not it pays off to run the tasks on multiple threads.
+     * Spreading the tasks is pointless on a single processor system.
+     */
+    private static final boolean PARALLEL
+            = 1 < Runtime.getRuntime().availableProcessors();
+
+    /* Can't touch this - hammer time! */
+    private DerivationTasks() { }
+
+    /**
+     * Runs the given tasks and waits until all of them have completed.
+     * The current thread runs the last task.
+     * If the current thread gets interrupted while waiting, then it keeps
+     * waiting and restores its interrupt status before returning.
+     *
+     * @param  tasks the tasks to run.
+     * @throws RuntimeException if any task throws a runtime exception.
+     * @throws Error if any task throws an error.
+     */
+    static void run(final Runnable... tasks) {
+        final int n = tasks.length;
+        if (!PARALLEL || 1 >= n) {
+            for (final Runnable task : tasks)
+                task.run();
+            return;
+        }
+        final ExecutorService executor = Boot.executor;
+        final List<Future<?>> results = new ArrayList<Future<?>>(n - 1);
+        for (int i = 0; i < n - 1; i++)
+            results.add(executor.submit(tasks[i]));
+        tasks[n - 1].run();
+        boolean interrupted = false;
+        try {
+            for (final Future<?> result : results) {
+                while (true) {
+                    try {
+                        result.get();
+                        break;
+                    } catch (final InterruptedException ex) {
+                        interrupted = true;
+                    } catch (final ExecutionException ex) {
+                        final Throwable cause = ex.getCause();
+                        if (cause instanceof RuntimeException)
+                            throw (RuntimeException) cause;
+                        if (cause instanceof Error)
+                            throw (Error) cause;
+                        throw new AssertionError(cause);
+                    }
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt(); // restore
+        }
+    }
+
+    /** A static data utility class used for lazy initialization. */
+    private static final class Boot {
+        static final ExecutorService executor
+                = Executors.newCachedThreadPool(new DerivationThreadFactory());
+    } // Boot
+
+    private static final class DerivationThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(
+                    ThreadGroups.getServerThreadGroup(), r,
+                    DerivationTasks.class.getName() + ".DerivationThread");
+            thread.setDaemon(true);
+            return thread;
+        }
+    } // DerivationThreadFactory
+}
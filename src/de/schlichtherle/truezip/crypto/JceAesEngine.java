@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import libtruezip.lcrypto.crypto.BlockCipher;
+import libtruezip.lcrypto.crypto.CipherParameters;
+import libtruezip.lcrypto.crypto.DataLengthException;
+import libtruezip.lcrypto.crypto.OutputLengthException;
+import libtruezip.lcrypto.crypto.params.KeyParameter;
+
+/**
+ * An AES engine which uses the {@code AES/ECB/NoPadding} cipher of the
+ * Java Cryptography Extension.
+ * In addition to the {@link BlockCipher} interface, this class supports
+ * processing many blocks at once, which is required to get the full
+ * benefit of the intrinsics of the JVM.
+ *
+ * @see    CryptoBackend#JCE
+ * @author Christian Schlichtherle
+ */
+final class JceAesEngine implements BlockCipher {
+
+    private static final int BLOCK_SIZE = 16;
+
+    private final Cipher cipher;
+
+    JceAesEngine() {
+        try {
+            cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        } catch (final GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public void init(
+            final boolean forEncryption,
+            final CipherParameters params)
+    throws IllegalArgumentException {
+        if (!(params instanceof KeyParameter))
+            throw new IllegalArgumentException("invalid parameter passed to AES init - " + params.getClass().getName());
+        try {
+            cipher.init(
+                    forEncryption ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE,
+                    new SecretKeySpec(((KeyParameter) params).getKey(), "AES"));
+        } catch (final InvalidKeyException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return "AES";
+    }
+
+    @Override
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    public int processBlock(
+            final byte[] in,
+            final int inOff,
+            final byte[] out,
+            final int outOff)
+    throws DataLengthException, IllegalStateException {
+        return processBlocks(in, inOff, out, outOff, 1);
+    }
+
+    /**
+     * Processes the given number of consecutive blocks at once.
+     *
+     * @param  in the array containing the input data.
+     * @param  inOff the offset into the input array where the data starts.
+     * @param  out the array the output data will be copied into.
+     * @param  outOff the offset into the output array where the output will
+     *         start.
+     * @param  blocks the number of blocks to process.
+     * @return The number of bytes processed and produced.
+     */
+    int processBlocks(
+            final byte[] in,
+            final int inOff,
+            final byte[] out,
+            final int outOff,
+            final int blocks)
+    throws DataLengthException, IllegalStateException {
+        final int length = blocks * BLOCK_SIZE;
+        if (inOff + length > in.length)
+            throw new DataLengthException("input buffer too short");
+        try {
+            return cipher.update(in, inOff, length, out, outOff);
+        } catch (final ShortBufferException ex) {
+            throw new OutputLengthException("output buffer too short");
+        }
+    }
+
+    @Override
+    public void reset() {
+        // ECB mode has no state between blocks.
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.crypto;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import libtruezip.lcrypto.crypto.CipherParameters;
+import libtruezip.lcrypto.crypto.DataLengthException;
+import libtruezip.lcrypto.crypto.Mac;
+import libtruezip.lcrypto.crypto.OutputLengthException;
+import libtruezip.lcrypto.crypto.params.KeyParameter;
+
+/**
+ * Adapts a MAC of the Java Cryptography Extension to the {@link Mac}
+ * interface of the lightweight crypto API.
+ *
+ * @see    CryptoBackend#JCE
+ * @author Christian Schlichtherle
+ */
+final class JceMac implements Mac {
+
+    private final javax.crypto.Mac mac;
+    private final String name;
+
+    /**
+     * Constructs a new JCE MAC.
+     *
+     * @param algorithm the JCE name of the MAC algorithm.
+     * @param name the lightweight crypto API name of the MAC algorithm.
+     */
+    JceMac(final String algorithm, final String name) {
+        try {
+            this.mac = javax.crypto.Mac.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        this.name = name;
+    }
+
+    @Override
+    public void init(final CipherParameters params)
+    throws IllegalArgumentException {
+        if (!(params instanceof KeyParameter))
+            throw new IllegalArgumentException("invalid parameter passed to HMAC init - " + params.getClass().getName());
+        try {
+            mac.init(new SecretKeySpec(
+                    ((KeyParameter) params).getKey(),
+                    mac.getAlgorithm()));
+        } catch (final InvalidKeyException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return name;
+    }
+
+    @Override
+    public int getMacSize() {
+        return mac.getMacLength();
+    }
+
+    @Override
+    public void update(final byte in) throws IllegalStateException {
+        mac.update(in);
+    }
+
+    @Override
+    public void update(final byte[] in, final int inOff, final int len)
+    throws DataLengthException, IllegalStateException {
+        mac.update(in, inOff, len);
+    }
+
+    @Override
+    public int doFinal(final byte[] out, final int outOff)
+    throws DataLengthException, IllegalStateException {
+        try {
+            mac.doFinal(out, outOff);
+        } catch (final ShortBufferException ex) {
+            throw new OutputLengthException("output buffer too short");
+        }
+        return mac.getMacLength();
+    }
+
+    @Override
+    public void reset() {
+        mac.reset();
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.crypto;
+
+import libtruezip.lcrypto.crypto.CipherParameters;
+import libtruezip.lcrypto.crypto.Digest;
+import libtruezip.lcrypto.crypto.ExtendedDigest;
+import libtruezip.lcrypto.crypto.PBEParametersGenerator;
+import libtruezip.lcrypto.crypto.generators.PKCS12ParametersGenerator;
+import static libtruezip.lcrypto.crypto.generators.PKCS12ParametersGenerator.*;
+import libtruezip.lcrypto.crypto.params.KeyParameter;
+import libtruezip.lcrypto.crypto.params.ParametersWithIV;
+import libtruezip.lcrypto.util.Memoable;
+
+/**
+ * Generator for PBE derived keys and IVs as defined by PKCS #12 V1.0.
+ * This generator produces the same results as a
+ * {@link PKCS12ParametersGenerator}, but faster:
+ * <ul>
+ * <li>The salt and password block gets set up only once per call and the
+ *     iterations do not allocate any objects.
+ * <li>The key and the IV get derived in parallel, each with its own copy
+ *     of the {@link Memoable} digest.
+ * </ul>
+ *
+ * @author Christian Schlichtherle
+ */
+public final class ParallelPKCS12ParametersGenerator
+extends PBEParametersGenerator {
+
+    private final Digest digest;
+    private final int u, v;
+
+    /**
+     * Constructs a new PKCS #12 parameters generator.
+     *
+     * @param  digest the digest to be used as the source of derived keys.
+     *         This gets copied for each derived key.
+     * @throws IllegalArgumentException if the digest is not an
+     *         {@link ExtendedDigest} or not {@link Memoable}.
+     */
+    public ParallelPKCS12ParametersGenerator(final Digest digest) {
+        if (!(digest instanceof ExtendedDigest) || !(digest instanceof Memoable))
+            throw new IllegalArgumentException("Digest " + digest.getAlgorithmName() + " unsupported");
+        this.digest = digest;
+        this.u = digest.getDigestSize();
+        this.v = ((ExtendedDigest) digest).getByteLength();
+    }
+
+    /**
+     * Returns the concatenation of the salt and the password, each repeated
+     * to a multiple of the block length of the digest.
+     */
+    private byte[] input() {
+        final int v = this.v;
+        final byte[] salt = this.salt, password = this.password;
+        final int sLen = null == salt || 0 == salt.length
+                ? 0 : v * ((salt.length + v - 1) / v);
+        final int pLen = null == password || 0 == password.length
+                ? 0 : v * ((password.length + v - 1) / v);
+        final byte[] I = new byte[sLen + pLen];
+        for (int i = 0; i < sLen; i++)
+            I[i] = salt[i % salt.length];
+        for (int i = 0; i < pLen; i++)
+            I[sLen + i] = password[i % password.length];
+        return I;
+    }
+
+    /**
+     * add a + b + 1, returning the result in a. The a value is treated
+     * as a BigInteger of length (b.length * 8) bits. The result is
+     * modulo 2^b.length in case of overflow.
+     */
+    private static void adjust(final byte[] a, final int aOff, final byte[] b) {
+        int x = (b[b.length - 1] & 0xff) + (a[aOff + b.length - 1] & 0xff) + 1;
+        a[aOff + b.length - 1] = (byte) x;
+        x >>>= 8;
+        for (int i = b.length - 2; i >= 0; i--) {
+            x += (b[i] & 0xff) + (a[aOff + i] & 0xff);
+            a[aOff + i] = (byte) x;
+            x >>>= 8;
+        }
+    }
+
+    /**
+     * Generation of a derived key ala PKCS12 V1.0.
+     *
+     * @param digest the digest to use exclusively.
+     * @param idByte the diversifier for the key material.
+     * @param I the concatenation of the salt and the password.
+     *        This gets modified.
+     * @param dKey the array for the derived key.
+     */
+    private void generateDerivedKey(
+            final Digest digest,
+            final int idByte,
+            final byte[] I,
+            final byte[] dKey) {
+        final int u = this.u, v = this.v, n = dKey.length;
+        final int iterationCount = this.iterationCount;
+        final byte[] D = new byte[v];
+        for (int i = 0; i < v; i++)
+            D[i] = (byte) idByte;
+        final byte[] B = new byte[v];
+        final byte[] A = new byte[u];
+        final int c = (n + u - 1) / u;
+        for (int i = 1; i <= c; i++) {
+            digest.update(D, 0, v);
+            digest.update(I, 0, I.length);
+            digest.doFinal(A, 0);
+            for (int j = 1; j < iterationCount; j++) {
+                digest.update(A, 0, u);
+                digest.doFinal(A, 0);
+            }
+            for (int j = 0; j < v; j++)
+                B[j] = A[j % u];
+            for (int j = 0; j < I.length / v; j++)
+                adjust(I, j * v, B);
+            System.arraycopy(A, 0, dKey, (i - 1) * u, Math.min(u, n - (i - 1) * u));
+        }
+    }
+
+    private Digest newDigest() {
+        return (Digest) ((Memoable) digest).copy();
+    }
+
+    /**
+     * Generate a key parameter derived from the password, salt, and iteration
+     * count we are currently initialised with.
+     *
+     * @param keySize the size of the key we want (in bits)
+     * @return a KeyParameter object.
+     */
+    @Override
+    public CipherParameters generateDerivedParameters(int keySize) {
+        keySize = keySize / 8;
+        final byte[] dKey = new byte[keySize];
+        generateDerivedKey(newDigest(), KEY_MATERIAL, input(), dKey);
+        return new KeyParameter(dKey, 0, keySize);
+    }
+
+    /**
+     * Generate a key with initialisation vector parameter derived from
+     * the password, salt, and iteration count we are currently initialised
+     * with.
+     * The key and the initialisation vector get derived in parallel.
+     *
+     * @param keySize the size of the key we want (in bits)
+     * @param ivSize the size of the iv we want (in bits)
+     * @return a ParametersWithIV object.
+     */
+    @Override
+    public CipherParameters generateDerivedParameters(int keySize, int ivSize) {
+        keySize = keySize / 8;
+        ivSize = ivSize / 8;
+        final byte[] dKey = new byte[keySize];
+        final byte[] iv = new byte[ivSize];
+        final byte[] I = input();
+        final Digest keyDigest = newDigest(), ivDigest = newDigest();
+        final byte[] keyI = I.clone();
+        DerivationTasks.run(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        generateDerivedKey(keyDigest, KEY_MATERIAL, keyI, dKey);
+                    }
+                },
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        generateDerivedKey(ivDigest, IV_MATERIAL, I, iv);
+                    }
+                });
+        return new ParametersWithIV(new KeyParameter(dKey, 0, keySize), iv, 0, ivSize);
+    }
+
+    /**
+     * Generate a key parameter for use with a MAC derived from the password,
+     * salt, and iteration count we are currently initialised with.
+     *
+     * @param keySize the size of the key we want (in bits)
+     * @return a KeyParameter object.
+     */
+    @Override
+    public CipherParameters generateDerivedMacParameters(int keySize) {
+        keySize = keySize / 8;
+        final byte[] dKey = new byte[keySize];
+        generateDerivedKey(newDigest(), MAC_MATERIAL, input(), dKey);
+        return new KeyParameter(dKey, 0, keySize);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.crypto;
+
+import libtruezip.lcrypto.crypto.CipherParameters;
+import libtruezip.lcrypto.crypto.Digest;
+import libtruezip.lcrypto.crypto.Mac;
+import libtruezip.lcrypto.crypto.PBEParametersGenerator;
+import libtruezip.lcrypto.crypto.digests.SHA1Digest;
+import libtruezip.lcrypto.crypto.generators.PKCS5S2ParametersGenerator;
+import libtruezip.lcrypto.crypto.macs.HMac;
+import libtruezip.lcrypto.crypto.params.KeyParameter;
+import libtruezip.lcrypto.crypto.params.ParametersWithIV;
+import libtruezip.lcrypto.util.Memoable;
+
+/**
+ * Generator for PBE derived keys and IVs as defined by PKCS #5 V2.0 Scheme 2
+ * alias PBKDF2.
+ * This generator produces the same results as a
+ * {@link PKCS5S2ParametersGenerator}, but faster:
+ * <ul>
+ * <li>Each block of the derived key gets computed by its own HMAC, which
+ *     gets initialized with the password only once.
+ *     Because the digest is {@link Memoable}, the HMAC keeps the digest
+ *     states after processing the inner and outer key pads, so each
+ *     iteration costs only two runs of the compression function of the
+ *     digest.
+ * <li>If the derived key is longer than the digest, then its blocks get
+ *     computed in parallel.
+ * </ul>
+ *
+ * @author Christian Schlichtherle
+ */
+public final class ParallelPKCS5S2ParametersGenerator
+extends PBEParametersGenerator {
+
+    private final Digest digest;
+
+    /**
+     * Constructs a new PKCS #5 Scheme 2 parameters generator which uses an
+     * HMAC-SHA-1.
+     */
+    public ParallelPKCS5S2ParametersGenerator() {
+        this(new SHA1Digest());
+    }
+
+    /**
+     * Constructs a new PKCS #5 Scheme 2 parameters generator which uses an
+     * HMAC with the given digest.
+     *
+     * @param  digest the digest for the HMAC.
+     *         This gets copied for each block of the derived key.
+     * @throws IllegalArgumentException if the digest is not
+     *         {@link Memoable}.
+     */
+    public ParallelPKCS5S2ParametersGenerator(final Digest digest) {
+        if (!(digest instanceof Memoable))
+            throw new IllegalArgumentException("Digest " + digest.getAlgorithmName() + " unsupported");
+        this.digest = digest;
+    }
+
+    private byte[] generateDerivedKey(final int dkLen) {
+        final int c = iterationCount;
+        if (c == 0)
+            throw new IllegalArgumentException("iteration count must be at least 1.");
+        final byte[] S = salt;
+        final int hLen = digest.getDigestSize();
+        final int l = (dkLen + hLen - 1) / hLen;
+        final byte[] outBytes = new byte[l * hLen];
+        final KeyParameter param = new KeyParameter(password);
+
+        final class Block implements Runnable {
+            final Mac hMac = new HMac((Digest) ((Memoable) digest).copy());
+            final int i;
+
+            Block(final int i) {
+                this.i = i;
+                hMac.init(param);
+            }
+
+            @Override
+            public void run() {
+                final Mac hMac = this.hMac;
+                final byte[] state = new byte[hLen];
+                final int outOff = (i - 1) * hLen;
+                if (S != null)
+                    hMac.update(S, 0, S.length);
+                hMac.update((byte) (i >>> 24));
+                hMac.update((byte) (i >>> 16));
+                hMac.update((byte) (i >>> 8));
+                hMac.update((byte) i);
+                hMac.doFinal(state, 0);
+                System.arraycopy(state, 0, outBytes, outOff, hLen);
+                for (int count = 1; count < c; count++) {
+                    hMac.update(state, 0, hLen);
+                    hMac.doFinal(state, 0);
+                    for (int j = 0; j < hLen; j++)
+                        outBytes[outOff + j] ^= state[j];
+                }
+            }
+        } // Block
+
+        final Runnable[] blocks = new Runnable[l];
+        for (int i = 0; i < l; i++)
+            blocks[i] = new Block(i + 1);
+        DerivationTasks.run(blocks);
+        return outBytes;
+    }
+
+    /**
+     * Generate a key parameter derived from the password, salt, and iteration
+     * count we are currently initialised with.
+     *
+     * @param keySize the size of the key we want (in bits)
+     * @return a KeyParameter object.
+     */
+    @Override
+    public CipherParameters generateDerivedParameters(int keySize) {
+        keySize = keySize / 8;
+        final byte[] dKey = generateDerivedKey(keySize);
+        return new KeyParameter(dKey, 0, keySize);
+    }
+
+    /**
+     * Generate a key with initialisation vector parameter derived from
+     * the password, salt, and iteration count we are currently initialised
+     * with.
+     *
+     * @param keySize the size of the key we want (in bits)
+     * @param ivSize the size of the iv we want (in bits)
+     * @return a ParametersWithIV object.
+     */
+    @Override
+    public CipherParameters generateDerivedParameters(int keySize, int ivSize) {
+        keySize = keySize / 8;
+        ivSize = ivSize / 8;
+        final byte[] dKey = generateDerivedKey(keySize + ivSize);
+        return new ParametersWithIV(new KeyParameter(dKey, 0, keySize), dKey, keySize, ivSize);
+    }
+
+    /**
+     * Generate a key parameter for use with a MAC derived from the password,
+     * salt, and iteration count we are currently initialised with.
+     *
+     * @param keySize the size of the key we want (in bits)
+     * @return a KeyParameter object.
+     */
+    @Override
+    public CipherParameters generateDerivedMacParameters(int keySize) {
+        return generateDerivedParameters(keySize);
+    }
+}
@@ -23,12 +23,16 @@ import libtruezip.lcrypto.crypto.params.ParametersWithIV;
  */
 public class SICSeekableBlockCipher implements SeekableBlockCipher {
 
+    /** The maximum number of blocks processed at once, which is {@value}. */
+    private static final int KEY_STREAM_BLOCKS = 256;
+
     protected final BlockCipher cipher;
     protected final int blockSize;
     protected long blockCounter;
     protected final byte[] IV;
     protected final byte[] cipherIn;
     protected final byte[] cipherOut;
+    private byte[] keyStream;
 
     /**
      * Constructs a new big endian SIC seekable block cipher mode.
@@ -83,7 +87,7 @@ public class SICSeekableBlockCipher implements SeekableBlockCipher {
             final byte[] out,
             int outOff)
     throws DataLengthException, IllegalStateException {
-        incCounter();
+        counterBlock(this.blockCounter++, this.cipherIn, 0); // post-increment the block counter!
         this.cipher.processBlock(this.cipherIn, 0, this.cipherOut, 0);
 
         // XOR the cipherOut with the plaintext producing the cipher text.
@@ -99,12 +103,109 @@ public class SICSeekableBlockCipher implements SeekableBlockCipher {
         return blockSize;
     }
 
-    private void incCounter() {
+    /**
+     * Processes the given number of consecutive blocks at once.
+     * The cipher input for all blocks gets computed first, then it gets
+     * encrypted in one go and finally the result gets XORed with the input
+     * data.
+     * If the underlying block cipher supports bulk processing, then this is
+     * considerably faster than processing one block at a time.
+     *
+     * @param  in the array containing the input data.
+     * @param  inOff the offset into the input array where the data starts.
+     * @param  out the array the output data will be copied into.
+     * @param  outOff the offset into the output array where the output will
+     *         start.
+     * @param  blocks the number of blocks to process.
+     * @return The number of bytes processed and produced.
+     */
+    public int processBlocks(
+            final byte[] in,
+            final int inOff,
+            final byte[] out,
+            final int outOff,
+            final int blocks)
+    throws DataLengthException, IllegalStateException {
         final int blockSize = this.blockSize;
-        long blockCounter = this.blockCounter++; // post-increment the block counter!
-        for (int i = blockSize; --i >= 0; ) { // big endian order!
+        final int total = blocks * blockSize;
+        byte[] keyStream = this.keyStream;
+        if (null == keyStream)
+            this.keyStream = keyStream = new byte[KEY_STREAM_BLOCKS * blockSize];
+        for (int done = 0; done < total; ) {
+            final int length = Math.min(total - done, keyStream.length);
+
+            // Compute the cipher input.
+            long blockCounter = this.blockCounter;
+            for (int i = 0; i < length; i += blockSize)
+                counterBlock(blockCounter++, keyStream, i);
+            this.blockCounter = blockCounter;
+
+            // Encrypt the cipher input.
+            final BlockCipher cipher = this.cipher;
+            if (cipher instanceof JceAesEngine) {
+                ((JceAesEngine) cipher).processBlocks(
+                        keyStream, 0, keyStream, 0, length / blockSize);
+            } else {
+                for (int i = 0; i < length; i += blockSize)
+                    cipher.processBlock(keyStream, i, keyStream, i);
+            }
+
+            // XOR the key stream with the plaintext producing the cipher text.
+            for (int i = 0, j = inOff + done, k = outOff + done; i < length; )
+                out[k++] = (byte) (in[j++] ^ keyStream[i++]);
+            done += length;
+        }
+        return total;
+    }
+
+    /**
+     * Processes the given number of consecutive blocks with the given cipher.
+     * If the cipher is a {@code SICSeekableBlockCipher}, then all blocks get
+     * processed at once, otherwise one block at a time.
+     *
+     * @param  cipher the cipher to use.
+     * @param  in the array containing the input data.
+     * @param  inOff the offset into the input array where the data starts.
+     * @param  out the array the output data will be copied into.
+     * @param  outOff the offset into the output array where the output will
+     *         start.
+     * @param  blocks the number of blocks to process.
+     * @return The number of bytes processed and produced.
+     */
+    static int processBlocks(
+            final SeekableBlockCipher cipher,
+            final byte[] in,
+            final int inOff,
+            final byte[] out,
+            final int outOff,
+            final int blocks) {
+        if (cipher instanceof SICSeekableBlockCipher)
+            return ((SICSeekableBlockCipher) cipher).processBlocks(
+                    in, inOff, out, outOff, blocks);
+        final int blockSize = cipher.getBlockSize();
+        final int total = blocks * blockSize;
+        for (int i = 0; i < total; i += blockSize)
+            cipher.processBlock(in, inOff + i, out, outOff + i);
+        return total;
+    }
+
+    /**
+     * Computes the cipher input for the block with the given index.
+     * This implementation adds the block counter to the IV in
+     * <em>big endian</em> order.
+     *
+     * @param blockCounter the index of the block, starting at 0.
+     * @param out the array to write the cipher input to.
+     * @param outOff the offset where to start writing the cipher input.
+     */
+    protected void counterBlock(
+            long blockCounter,
+            final byte[] out,
+            final int outOff) {
+        final byte[] IV = this.IV;
+        for (int i = this.blockSize; --i >= 0; ) { // big endian order!
             blockCounter += IV[i] & 0xff;
-            this.cipherIn[i] = (byte) blockCounter;
+            out[outOff + i] = (byte) blockCounter;
             blockCounter >>>= 8;
         }
     }
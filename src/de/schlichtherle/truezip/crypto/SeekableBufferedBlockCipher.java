@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.crypto;
+
+import libtruezip.lcrypto.crypto.BufferedBlockCipher;
+import libtruezip.lcrypto.crypto.DataLengthException;
+import libtruezip.lcrypto.crypto.OutputLengthException;
+
+/**
+ * A buffered block cipher for a {@link SeekableBlockCipher} in counter
+ * mode.
+ * Unlike its super class, this class processes all complete blocks of the
+ * input with a single call to
+ * {@link SICSeekableBlockCipher#processBlocks(byte[], int, byte[], int, int)}
+ * rather than one block at a time if the underlying cipher is a
+ * {@link SICSeekableBlockCipher}.
+ *
+ * @author Christian Schlichtherle
+ */
+public class SeekableBufferedBlockCipher extends BufferedBlockCipher {
+
+    /**
+     * Constructs a new seekable buffered block cipher.
+     *
+     * @param cipher the underlying seekable block cipher.
+     */
+    public SeekableBufferedBlockCipher(SeekableBlockCipher cipher) {
+        super(cipher);
+    }
+
+    @Override
+    public int processBytes(
+            final byte[] in,
+            int inOff,
+            int len,
+            final byte[] out,
+            final int outOff)
+    throws DataLengthException, IllegalStateException {
+        if (len < 0)
+            throw new IllegalArgumentException("Can't have a negative input length!");
+        final int length = getUpdateOutputSize(len);
+        if (length > 0 && outOff + length > out.length)
+            throw new OutputLengthException("output buffer too short");
+
+        final byte[] buf = this.buf;
+        final int blockSize = buf.length;
+        int resultLen = 0;
+
+        // Complete the buffered partial block, if any.
+        if (0 < bufOff) {
+            final int gapLen = Math.min(len, blockSize - bufOff);
+            System.arraycopy(in, inOff, buf, bufOff, gapLen);
+            bufOff += gapLen;
+            inOff += gapLen;
+            len -= gapLen;
+            if (bufOff < blockSize)
+                return 0;
+            resultLen += cipher.processBlock(buf, 0, out, outOff);
+            bufOff = 0;
+        }
+
+        // Process all complete blocks at once.
+        final int blocks = len / blockSize;
+        if (0 < blocks) {
+            final int processed = SICSeekableBlockCipher.processBlocks(
+                    (SeekableBlockCipher) cipher,
+                    in, inOff, out, outOff + resultLen, blocks);
+            resultLen += processed;
+            inOff += processed;
+            len -= processed;
+        }
+
+        // Buffer the remaining partial block, if any.
+        System.arraycopy(in, inOff, buf, 0, len);
+        bufOff = len;
+
+        assert length == resultLen;
+        return resultLen;
+    }
+}
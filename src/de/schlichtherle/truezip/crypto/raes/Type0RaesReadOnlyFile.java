@@ -4,6 +4,8 @@
  */
 package de.schlichtherle.truezip.crypto.raes;
 
+import de.schlichtherle.truezip.crypto.CryptoBackend;
+import de.schlichtherle.truezip.crypto.ParallelPKCS12ParametersGenerator;
 import de.schlichtherle.truezip.crypto.SICSeekableBlockCipher;
 import de.schlichtherle.truezip.crypto.SeekableBlockCipher;
 import de.schlichtherle.truezip.crypto.SuspensionPenalty;
@@ -18,9 +20,6 @@ import libtruezip.lcrypto.crypto.Mac;
 import libtruezip.lcrypto.crypto.PBEParametersGenerator;
 import static libtruezip.lcrypto.crypto.PBEParametersGenerator.PKCS12PasswordToBytes;
 import libtruezip.lcrypto.crypto.digests.SHA256Digest;
-import libtruezip.lcrypto.crypto.engines.AESFastEngine;
-import libtruezip.lcrypto.crypto.generators.PKCS12ParametersGenerator;
-import libtruezip.lcrypto.crypto.macs.HMac;
 import libtruezip.lcrypto.crypto.params.KeyParameter;
 import libtruezip.lcrypto.crypto.params.ParametersWithIV;
 
@@ -40,6 +39,9 @@ final class Type0RaesReadOnlyFile extends RaesReadOnlyFile {
      */
     private final KeyParameter sha256MacParam;
 
+    /** The parameters required to init the AES cipher in CTR mode. */
+    private final ParametersWithIV aesCtrParam;
+
     private final Type0RaesParameters type0Params;
 
     /**
@@ -91,7 +93,7 @@ final class Type0RaesReadOnlyFile extends RaesReadOnlyFile {
         rof.readFully(salt);
 
         // Init KLAC and footer.
-        final Mac klac = new HMac(new SHA256Digest());
+        final Mac klac = CryptoBackend.get().newHMacSha256();
         this.footer = new byte[klac.getMacSize()];
 
         // Init start, end and length of encrypted data.
@@ -116,7 +118,7 @@ final class Type0RaesReadOnlyFile extends RaesReadOnlyFile {
 
         // Derive cipher and MAC parameters.
         final PBEParametersGenerator
-                gen = new PKCS12ParametersGenerator(new SHA256Digest());
+                gen = new ParallelPKCS12ParametersGenerator(new SHA256Digest());
         ParametersWithIV aesCtrParam;
         KeyParameter sha256MacParam;
         byte[] buf;
@@ -157,10 +159,8 @@ final class Type0RaesReadOnlyFile extends RaesReadOnlyFile {
         this.sha256MacParam = sha256MacParam;
 
         // Init cipher.
-        final SeekableBlockCipher
-                cipher = new SICSeekableBlockCipher(new AESFastEngine());
-        cipher.init(false, aesCtrParam);
-        init(cipher, start, length);
+        this.aesCtrParam = aesCtrParam;
+        init(newCipher(), start, length);
 
         // Commit key strength to parameters.
         param.setKeyStrength(keyStrength);
@@ -172,6 +172,15 @@ final class Type0RaesReadOnlyFile extends RaesReadOnlyFile {
             pwd[i] = 0;
     }
 
+    @Override
+    protected SeekableBlockCipher newCipher() {
+        final SeekableBlockCipher
+                cipher = new SICSeekableBlockCipher(
+                    CryptoBackend.get().newAesEngine());
+        cipher.init(false, aesCtrParam);
+        return cipher;
+    }
+
     @Override
     public KeyStrength getKeyStrength() {
         return keyStrength;
@@ -179,7 +188,7 @@ final class Type0RaesReadOnlyFile extends RaesReadOnlyFile {
 
     @Override
     public void authenticate() throws IOException {
-        final Mac mac = new HMac(new SHA256Digest());
+        final Mac mac = CryptoBackend.get().newHMacSha256();
         mac.init(sha256MacParam);
         final byte[] buf = computeMac(mac);
         assert buf.length == mac.getMacSize();
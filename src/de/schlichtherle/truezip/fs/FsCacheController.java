@@ -6,6 +6,7 @@ package de.schlichtherle.truezip.fs;
 
 import de.schlichtherle.truezip.entry.Entry;
 import de.schlichtherle.truezip.entry.Entry.Type;
+import static de.schlichtherle.truezip.entry.Entry.Size.DATA;
 import static de.schlichtherle.truezip.entry.Entry.Type.FILE;
 import static de.schlichtherle.truezip.fs.FsOutputOption.EXCLUSIVE;
 import static de.schlichtherle.truezip.fs.FsOutputOption.GROW;
@@ -14,6 +15,7 @@ import static de.schlichtherle.truezip.fs.FsSyncOption.CLEAR_CACHE;
 import static de.schlichtherle.truezip.fs.FsSyncOptions.SYNC;
 import de.schlichtherle.truezip.io.DecoratingInputStream;
 import de.schlichtherle.truezip.io.DecoratingOutputStream;
+import de.schlichtherle.truezip.rof.DecoratingReadOnlyFile;
 import de.schlichtherle.truezip.rof.ReadOnlyFile;
 import de.schlichtherle.truezip.socket.*;
 import static de.schlichtherle.truezip.socket.IOCache.Strategy.WRITE_BACK;
@@ -21,8 +23,8 @@ import de.schlichtherle.truezip.util.BitField;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,6 +52,13 @@ import java.util.logging.Logger;
  *     clients, allowing it to create, read, update or delete the entry data
  *     while some clients are still busy on reading or writing the copied
  *     entry data.
+ * <li>Optionally, the number and the total size of the cached entries get
+ *     limited by a budget per file system.
+ *     If the budget gets exceeded, then the least recently used caches which
+ *     have no open streams get evicted.
+ *     Caches without pending changes get evicted first.
+ *     Caches with pending changes get flushed to the backing store before
+ *     they get evicted.
  * </ul>
  * <p>
  * <strong>TO THE FUTURE ME:</strong>
@@ -71,10 +80,35 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
 
     private static final SocketFactory SOCKET_FACTORY = SocketFactory.OIO;
 
+    /**
+     * The maximum number of cached entries per file system.
+     * This gets read from the system property
+     * {@code de.schlichtherle.truezip.fs.FsCacheController.maxEntries}
+     * and defaults to {@link Integer#MAX_VALUE}.
+     */
+    static final int MAX_ENTRIES = Integer.getInteger(
+            FsCacheController.class.getName() + ".maxEntries",
+            Integer.MAX_VALUE);
+
+    /**
+     * The maximum total size of the cached entry data per file system in
+     * bytes.
+     * This gets read from the system property
+     * {@code de.schlichtherle.truezip.fs.FsCacheController.maxSize}
+     * and defaults to {@link Long#MAX_VALUE}.
+     */
+    static final long MAX_SIZE = Long.getLong(
+            FsCacheController.class.getName() + ".maxSize",
+            Long.MAX_VALUE);
+
     private final IOPool<?> pool;
 
+    /** The entry caches in access order. */
     private final Map<FsEntryName, EntryCache>
-            caches = new HashMap<FsEntryName, EntryCache>();
+            caches = new LinkedHashMap<FsEntryName, EntryCache>(16, 0.75f, true);
+
+    /** The total size of the cached entry data. */
+    private long size;
 
     /**
      * Constructs a new file system cache controller.
@@ -197,6 +231,57 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
         builder.check();
     }
 
+    /**
+     * Evicts the least recently used entry caches which have no open streams
+     * until the budget is met.
+     * Caches without pending changes get evicted first.
+     * Caches with pending changes get flushed before they get evicted.
+     * If flushing a cache fails, then the failure gets logged and the cache
+     * gets kept, so that the next sync can still report it.
+     * This way, the client operation which has triggered the eviction never
+     * fails because of an I/O error for an unrelated entry.
+     *
+     * @param keep the entry cache which must not get evicted.
+     */
+    private void evict(final EntryCache keep) {
+        assert isWriteLockedByCurrentThread();
+        if (!isOverBudget())
+            return;
+        evict(keep, false);
+        evict(keep, true);
+    }
+
+    private void evict(final EntryCache keep, final boolean dirty) {
+        for (   final Iterator<EntryCache> i = caches.values().iterator();
+                isOverBudget() && i.hasNext(); ) {
+            final EntryCache cache = i.next();
+            if (keep == cache || 0 < cache.streams || dirty != cache.dirty)
+                continue;
+            if (dirty) {
+                try {
+                    cache.flush();
+                } catch (final IOException ex) {
+                    logger.log(Level.WARNING, "Keeping the entry cache for "
+                            + cache.name + " because flushing it has failed:",
+                            ex);
+                    continue;
+                }
+            }
+            i.remove();
+            try {
+                cache.clear();
+            } catch (final IOException ex) {
+                logger.log(Level.WARNING, "Failed to clear the evicted entry cache for "
+                        + cache.name + ":", ex);
+            }
+            FsCacheStatistics.SINGLETON.evicted(dirty);
+        }
+    }
+
+    private boolean isOverBudget() {
+        return MAX_ENTRIES < caches.size() || MAX_SIZE < size;
+    }
+
     private enum SocketFactory {
         OIO() {
             @Override
@@ -219,13 +304,26 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
         final FsEntryName name;
         final IOCache cache;
 
+        /** The number of open streams. */
+        int streams;
+
+        /** Whether or not this cache has pending changes. */
+        boolean dirty;
+
+        /** Whether or not this cache is accounted as registered. */
+        boolean registered;
+
+        /** The accounted size of the cached entry data. */
+        long size;
+
         EntryCache(final FsEntryName name) {
             this.name = name;
             this.cache = WRITE_BACK.newCache(FsCacheController.this.pool);
         }
 
         InputSocket<?> getInputSocket(BitField<FsInputOption> options) {
-            return cache.configure(new Input(options)).getInputSocket();
+            return new BufferInput(
+                    cache.configure(new Input(options)).getInputSocket());
         }
 
         OutputSocket<?> getOutputSocket(BitField<FsOutputOption> options,
@@ -235,15 +333,53 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
 
         void flush() throws IOException {
             cache.flush();
+            dirty = false; // only if the flush has succeeded!
         }
 
+        /**
+         * Clears this cache.
+         * This cache must have been removed from the map of entry caches
+         * before.
+         */
         void clear() throws IOException {
+            account(false, 0);
+            dirty = false;
             cache.clear();
         }
 
-        void register() {
+        void register(final long size) {
             assert isWriteLockedByCurrentThread();
-            caches.put(name, this);
+            final EntryCache old = caches.put(name, this);
+            if (null != old && this != old)
+                old.account(false, 0);
+            account(true, size);
+        }
+
+        /**
+         * Registers this cache with the size of its buffer and then evicts
+         * other entry caches if the budget is exceeded.
+         * An input buffer holds the entire entry data as soon as it has been
+         * allocated, no matter how much of it the client reads.
+         * An output buffer is current once the client stream for it has been
+         * closed.
+         */
+        void registerAndEvict() {
+            final Entry entry = cache.getEntry();
+            final long size = null == entry ? 0 : entry.getSize(DATA);
+            register(0 <= size ? size : 0);
+            evict(this);
+        }
+
+        /** Updates the accounted occupancy of this cache. */
+        void account(final boolean registered, final long size) {
+            final long delta = size - this.size;
+            FsCacheController.this.size += delta;
+            this.size = size;
+            final int entries = registered == this.registered
+                    ? 0
+                    : registered ? 1 : -1;
+            this.registered = registered;
+            FsCacheStatistics.SINGLETON.account(entries, delta);
         }
 
         /**
@@ -291,11 +427,76 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
                 @Override
                 public void close() throws IOException {
                     delegate.close();
-                    register();
+                    register(size);
                 }
             } // Stream
         } // Input
 
+        /**
+         * Counts the open client streams for the buffer of this cache and
+         * accounts its size when they get opened or closed.
+         * The input buffer gets allocated before a client stream gets
+         * created, so the buffer holds the entire entry data by then.
+         * Accounting it upon opening matters for clients which keep their
+         * stream open for a long time, e.g. the file system of a nested
+         * archive file.
+         */
+        final class BufferInput extends DecoratingInputSocket<Entry> {
+            BufferInput(InputSocket<? extends Entry> input) {
+                super(input);
+            }
+
+            @Override
+            public ReadOnlyFile newReadOnlyFile() throws IOException {
+                return new File(getBoundSocket().newReadOnlyFile());
+            }
+
+            @Override
+            public InputStream newInputStream() throws IOException {
+                return new Stream(getBoundSocket().newInputStream());
+            }
+
+            final class File extends DecoratingReadOnlyFile {
+                boolean closed;
+
+                File(final ReadOnlyFile rof) {
+                    super(rof);
+                    streams++;
+                    registerAndEvict();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    delegate.close();
+                    if (closed)
+                        return;
+                    closed = true;
+                    streams--;
+                    registerAndEvict();
+                }
+            } // File
+
+            final class Stream extends DecoratingInputStream {
+                boolean closed;
+
+                Stream(final InputStream in) {
+                    super(in);
+                    streams++;
+                    registerAndEvict();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    delegate.close();
+                    if (closed)
+                        return;
+                    closed = true;
+                    streams--;
+                    registerAndEvict();
+                }
+            } // Stream
+        } // BufferInput
+
         /**
          * This class requires LAZY INITIALIZATION of its delegate, but NO
          * automatic decoupling on exceptions!
@@ -334,18 +535,26 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
             }
 
             final class Stream extends DecoratingOutputStream {
+                boolean closed;
+
                 Stream() throws IOException {
                     // Note that the super class implementation MUST get
                     // bypassed because the socket MUST get kept even upon an
                     // exception!
                     //super(Output.super.newOutputStream());
                     super(getBoundSocket().newOutputStream());
-                    register();
+                    streams++;
+                    register(size);
                 }
 
                 @Override
                 public void close() throws IOException {
                     delegate.close();
+                    if (!closed) {
+                        closed = true;
+                        streams--;
+                        dirty = true;
+                    }
                     postOutput();
                 }
             } // Stream
@@ -357,7 +566,7 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
             void postOutput() throws IOException {
                 mknod(  options.clear(EXCLUSIVE),
                         null != template ? template : cache.getEntry());
-                register();
+                registerAndEvict();
             }
 
             void mknod( BitField<FsOutputOption> mknodOpts,
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.fs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide statistics for the entry caches of the file system
+ * controllers.
+ * An entry cache holds the contents of an archive entry in a buffer which
+ * gets allocated from an I/O pool, typically a temporary file.
+ * <p>
+ * The number and the total size of the cached entries are the current
+ * occupancy of all entry caches.
+ * The number of evictions and flushes count the entry caches which have
+ * been evicted because their file system controller has exceeded its
+ * budget.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class FsCacheStatistics {
+
+    /** The statistics which are used by the classes in this package. */
+    public static final FsCacheStatistics SINGLETON = new FsCacheStatistics();
+
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    private FsCacheStatistics() { }
+
+    /** Returns the number of cached entries. */
+    public long getEntries() {
+        return entries.get();
+    }
+
+    /** Returns the total size of the cached entry data in bytes. */
+    public long getSize() {
+        return size.get();
+    }
+
+    /** Returns the number of entry caches which have been evicted. */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of evicted entry caches which had to get flushed
+     * before because they contained data which was not yet written to the
+     * file system.
+     */
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    /**
+     * Records a change of the occupancy.
+     *
+     * @param entries the change of the number of cached entries.
+     * @param size the change of the total size of the cached entry data.
+     */
+    void account(final int entries, final long size) {
+        if (0 != entries)
+            this.entries.addAndGet(entries);
+        if (0 != size)
+            this.size.addAndGet(size);
+    }
+
+    /**
+     * Records an eviction.
+     *
+     * @param flushed whether or not the entry cache has been flushed before.
+     */
+    void evicted(final boolean flushed) {
+        evictions.incrementAndGet();
+        if (flushed)
+            flushes.incrementAndGet();
+    }
+}
@@ -27,6 +27,17 @@ implements Cloneable {
     private Type key;
     private LinkedHashSet<String> members;
 
+    /**
+     * The covariant entry of the parent directory which contains this entry
+     * in the archive file system or {@code null} if this entry is not linked
+     * into an archive file system.
+     * This link is only used for fixing the parent directories when mounting
+     * and for finding the parent directory when unlinking this entry.
+     * Making a new entry still looks up its parent directories by their path
+     * names because the entries are indexed by their path names.
+     */
+    FsCovariantEntry<E> parent;
+
     /**
      * Constructs a new covariant file system entry with the given path.
      *
@@ -51,6 +62,7 @@ implements Cloneable {
         } catch (CloneNotSupportedException ex) {
             throw new AssertionError(ex);
         }
+        clone.parent = null;
         final Map<Type, E> cloneMap = clone.map = new EnumMap<Type, E>(Type.class);
         try {
             for (final Map.Entry<Type, E> entry : this.map.entrySet()) {
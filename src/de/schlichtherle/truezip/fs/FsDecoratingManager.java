@@ -44,6 +44,11 @@ extends FsManager {
         return delegate.iterator();
     }
 
+    @Override
+    Iterator<FsController<?>> iterator(String scheme, String path) {
+        return delegate.iterator(scheme, path);
+    }
+
     /**
      * Returns a string representation of this object for debugging and logging
      * purposes.
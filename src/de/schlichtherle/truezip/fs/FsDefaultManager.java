@@ -10,6 +10,7 @@ import de.schlichtherle.truezip.util.Link.Type;
 import static de.schlichtherle.truezip.util.Link.Type.STRONG;
 import static de.schlichtherle.truezip.util.Link.Type.WEAK;
 import static de.schlichtherle.truezip.util.Links.getTarget;
+import java.net.URI;
 import java.util.*;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
@@ -29,6 +30,20 @@ public final class FsDefaultManager extends FsManager {
     private final Map<FsMountPoint, Link<FsController<?>>> controllers
             = new WeakHashMap<FsMountPoint, Link<FsController<?>>>();
 
+    /**
+     * The same links as in {@link #controllers}, but sorted by the
+     * {@link #key(FsMountPoint) keys} of their mount points.
+     * Iterating this map in descending order yields all file systems before
+     * any of their parent file systems and the file systems in a subtree
+     * form a contiguous range.
+     * Links with a cleared target get purged when the size of this map has
+     * doubled since the last purge.
+     */
+    private final NavigableMap<String, Link<FsController<?>>> sorted
+            = new TreeMap<String, Link<FsController<?>>>();
+
+    private int purge = 16;
+
     private final Type optionalScheduleType;
 
     private final ReadLock readLock;
@@ -146,11 +161,36 @@ public final class FsDefaultManager extends FsManager {
         void schedule(boolean mandatory) {
             assert(writeLock.isHeldByCurrentThread());
             final Type type = mandatory ? STRONG : optionalScheduleType;
-            final Object link = type.newLink(controller);
-            controllers.put(getMountPoint(), (Link<FsController<?>>) link);
+            final Link<FsController<?>> link
+                    = (Link<FsController<?>>) (Object) type.newLink(controller);
+            controllers.put(getMountPoint(), link);
+            sorted.put(key(getMountPoint()), link);
+            if (purge <= sorted.size())
+                purge();
         }
     } // ManagedModel
 
+    /**
+     * Returns the sort key for the given mount point.
+     * This is the scheme and the path of its hierarchical URI, so that the
+     * key of a parent mount point is a prefix of the keys of its members,
+     * followed by the entire URI in order to make the key unique.
+     */
+    private static String key(final FsMountPoint mp) {
+        final URI uri = mp.toHierarchicalUri();
+        return uri.getScheme() + ':' + uri.getPath() + '\0' + uri;
+    }
+
+    /** Removes all links with a cleared target from {@link #sorted}. */
+    private void purge() {
+        assert writeLock.isHeldByCurrentThread();
+        for (final Iterator<Link<FsController<?>>> i = sorted.values().iterator();
+                i.hasNext(); )
+            if (null == getTarget(i.next()))
+                i.remove();
+        purge = Math.max(16, 2 * sorted.size());
+    }
+
     @Override
     public int getSize() {
         readLock.lock();
@@ -163,15 +203,39 @@ public final class FsDefaultManager extends FsManager {
 
     @Override
     public Iterator<FsController<?>> iterator() {
-        return sortedControllers().iterator();
+        return snapshot(sorted).iterator();
+    }
+
+    @Override
+    Iterator<FsController<?>> iterator(final String scheme, final String path) {
+        final String lower = scheme + ':' + path;
+        final String upper = successor(lower);
+        return snapshot(null == upper
+                    ? sorted.tailMap(lower, true)
+                    : sorted.subMap(lower, true, upper, false))
+                .iterator();
+    }
+
+    /**
+     * Returns the least string which is greater than all strings starting
+     * with the given prefix or {@code null} if there is no such string.
+     */
+    private static String successor(final String prefix) {
+        for (int i = prefix.length(); 0 <= --i; ) {
+            final char c = prefix.charAt(i);
+            if (Character.MAX_VALUE != c)
+                return prefix.substring(0, i) + (char) (c + 1);
+        }
+        return null;
     }
 
-    private Set<FsController<?>> sortedControllers() {
+    private List<FsController<?>> snapshot(
+            final NavigableMap<String, Link<FsController<?>>> range) {
         readLock.lock();
         try {
-            final Set<FsController<?>> snapshot
-                    = new TreeSet<FsController<?>>(ReverseControllerComparator.INSTANCE);
-            for (final Link<FsController<? extends FsModel>> link : controllers.values()) {
+            final List<FsController<?>> snapshot
+                    = new ArrayList<FsController<?>>(range.size());
+            for (final Link<FsController<?>> link : range.descendingMap().values()) {
                 final FsController<?> controller = getTarget(link);
                 if (null != controller)
                     snapshot.add(controller);
@@ -187,20 +251,4 @@ public final class FsDefaultManager extends FsManager {
         FsSyncShutdownHook.cancel();
         super.sync(options);
     }
-
-    /**
-     * Orders file system controllers so that all file systems appear before
-     * any of their parent file systems.
-     */
-    private static final class ReverseControllerComparator
-    implements Comparator<FsController<?>> {
-        static final ReverseControllerComparator INSTANCE
-                = new ReverseControllerComparator();
-
-        @Override
-        public int compare(FsController<?> o1, FsController<?> o2) {
-            return o2.getModel().getMountPoint().toHierarchicalUri()
-                    .compareTo(o1.getModel().getMountPoint().toHierarchicalUri());
-        }
-    } // ReverseControllerComparator
 }
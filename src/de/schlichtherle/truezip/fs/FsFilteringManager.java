@@ -56,7 +56,7 @@ public final class FsFilteringManager extends FsDecoratingManager<FsManager> {
         final boolean pps = SEPARATOR_CHAR == pp.charAt(ppl - 1);
 
         FilteredControllerIterator() {
-            super(delegate.iterator());
+            super(delegate.iterator(prefix.getScheme(), prefix.getPath()));
         }
 
         @Override
@@ -23,6 +23,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -43,9 +46,49 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
     private static final ThreadLocal<Account> accounts =
             ThreadLocalAccountFactory.OLD.newThreadLocalAccount();
 
+    /**
+     * Whether or not a lock retry should wait for the contended lock rather
+     * than pausing for a random time interval.
+     * This gets read from the system property
+     * {@code de.schlichtherle.truezip.fs.FsLockController.waitForContendedLock}
+     * and defaults to {@code false}.
+     */
+    static final boolean WAIT_FOR_CONTENDED_LOCK = Boolean.getBoolean(
+            FsLockController.class.getName() + ".waitForContendedLock");
+
+    /**
+     * The maximum number of entries in the snapshot of the file system
+     * entries.
+     * This gets read from the system property
+     * {@code de.schlichtherle.truezip.fs.FsLockController.snapshotSize}
+     * and defaults to zero, which disables the snapshot.
+     * <p>
+     * If enabled, then {@link #getEntry} returns the result of a previous
+     * call for the same entry name without acquiring any lock if no write
+     * locked operation has been called since then and the write lock is
+     * not currently held.
+     * This enables concurrent threads to look up the entries of a mounted
+     * archive file without contending for the read lock.
+     * Note that the entries in the snapshot are shared between the callers,
+     * so they must not get modified.
+     */
+    static final int SNAPSHOT_SIZE = Integer.getInteger(
+            FsLockController.class.getName() + ".snapshotSize", 0);
+
+    private static final Object NO_ENTRY = new Object();
+
     private final ReadLock readLock;
     private final WriteLock writeLock;
 
+    /**
+     * The number of times a write locked operation has been started or
+     * finished.
+     * This gets only modified while holding the write lock.
+     */
+    private volatile int writes;
+
+    private volatile Snapshot snapshot;
+
     /**
      * Constructs a new file system lock controller.
      *
@@ -80,15 +123,42 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
 
     @Override
     public FsEntry getEntry(final FsEntryName name) throws IOException {
+        if (0 < SNAPSHOT_SIZE) {
+            final Snapshot snapshot = this.snapshot;
+            if (null != snapshot
+                    && snapshot.writes == writes
+                    && !getModel().isWriteLocked()) {
+                final Object entry = snapshot.entries.get(name);
+                if (null != entry)
+                    return NO_ENTRY == entry ? null : (FsEntry) entry;
+            }
+        }
         final class GetEntry implements Operation<FsEntry> {
             @Override
             public FsEntry call() throws IOException {
-                return delegate.getEntry(name);
+                final FsEntry entry = delegate.getEntry(name);
+                if (0 < SNAPSHOT_SIZE && !writeLock.isHeldByCurrentThread())
+                    snapshot(name, entry);
+                return entry;
             }
         } // GetEntry
         return readOrWriteLocked(new GetEntry());
     }
 
+    /**
+     * Puts the given entry into the snapshot.
+     * This method must get called while holding the read lock, but not the
+     * write lock.
+     */
+    private void snapshot(final FsEntryName name, final FsEntry entry) {
+        final int writes = this.writes;
+        Snapshot snapshot = this.snapshot;
+        if (null == snapshot || snapshot.writes != writes)
+            this.snapshot = snapshot = new Snapshot(writes);
+        if (snapshot.entries.size() < SNAPSHOT_SIZE)
+            snapshot.entries.put(name, null == entry ? NO_ENTRY : entry);
+    }
+
     @Override
     public boolean isReadable(final FsEntryName name) throws IOException {
         final class IsReadable implements Operation<Boolean> {
@@ -278,6 +348,18 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
      * <p>
      * This algorithm prevents dead locks effectively by temporarily unwinding
      * the stack and releasing all locks for a small random time interval.
+     * <p>
+     * If {@link #WAIT_FOR_CONTENDED_LOCK} is {@code true}, then the current
+     * thread waits for the lock which could not get acquired instead of
+     * pausing.
+     * Once it has been acquired, it's held while the operation gets retried
+     * if it's a write lock, so the nested call can acquire it again.
+     * Otherwise, it gets released immediately.
+     * In this case, the first lock gets acquired using
+     * {@link Lock#tryLock(long, TimeUnit)} with a timeout of
+     * {@link #WAIT_TIMEOUT_MILLIS} in order to guarantee progress.
+     * If waiting for any of these locks times out, then the procedure starts
+     * over again.
      * Note that this requires some minimal cooperation by the operation:
      * Whenever it throws an exception, it MUST leave its resources in a
      * consistent state so that it can get retried again!
@@ -294,36 +376,54 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
     throws IOException {
         final Account account = accounts.get();
         if (0 < account.lockCount) {
-            if (!lock.tryLock()) throw FsNeedsLockRetryException.get();
-            account.lockCount++;
-            try {
-                return operation.call();
-            } finally {
-                account.lockCount--;
-                lock.unlock();
+            if (!lock.tryLock()) {
+                account.contended = lock;
+                throw FsNeedsLockRetryException.get();
             }
+            return call(operation, lock, account);
         } else {
             try {
                 while (true) {
                     try {
-                        lock.lock();
-                        account.lockCount++;
-                        try {
-                            return operation.call();
-                        } finally {
-                            account.lockCount--;
-                            lock.unlock();
-                        }
+                        account.lock(lock);
+                        return call(operation, lock, account);
                     } catch (FsNeedsLockRetryException ex) {
-                        account.pause();
+                        account.retry();
                     }
                 }
             } finally {
+                account.release();
                 accounts.remove();
             }
         }
     }
 
+    /**
+     * Calls the given operation and releases the given lock, which must
+     * have been acquired by the caller.
+     * If the lock is the write lock and the snapshot is enabled, then the
+     * number of writes gets incremented before and after calling the
+     * operation in order to invalidate the snapshot.
+     */
+    private <T> T call(
+            final Operation<T> operation,
+            final Lock lock,
+            final Account account)
+    throws IOException {
+        final boolean write = 0 < SNAPSHOT_SIZE && lock == writeLock;
+        account.lockCount++;
+        if (write)
+            writes++;
+        try {
+            return operation.call();
+        } finally {
+            if (write)
+                writes++;
+            account.lockCount--;
+            lock.unlock();
+        }
+    }
+
     static int getLockCount() {
         return accounts.get().lockCount;
     }
@@ -482,12 +582,112 @@ extends FsLockModelDecoratingController<FsController<? extends FsLockModel>> {
         writeLocked(new Close());
     }
 
+    /**
+     * The entries which have been looked up since the given number of
+     * writes.
+     */
+    private static final class Snapshot {
+        final int writes;
+        final ConcurrentMap<FsEntryName, Object> entries
+                = new ConcurrentHashMap<FsEntryName, Object>();
+
+        Snapshot(int writes) { this.writes = writes; }
+    } // Snapshot
+
     private static final class Account {
         int lockCount;
         final Random rnd;
 
+        /** The lock which could not get acquired by a nested call. */
+        Lock contended;
+
+        /**
+         * The contended lock if it's a write lock which is held for the next
+         * retry.
+         * A read lock cannot get held because the retry may need to acquire
+         * the write lock of the same file system, which would dead lock.
+         */
+        Lock held;
+
+        boolean interrupted;
+
         Account(Random rnd) { this.rnd = rnd; }
 
+        /**
+         * Acquires the given lock for the first call on the call stack.
+         * If the contended lock is held, then waiting for the given lock
+         * times out after {@link #WAIT_TIMEOUT_MILLIS} milliseconds.
+         *
+         * @throws FsNeedsLockRetryException if waiting for the given lock
+         *         has timed out.
+         */
+        void lock(final Lock lock) {
+            if (null == held) {
+                lock.lock();
+                return;
+            }
+            interrupted |= Thread.interrupted();
+            try {
+                if (lock.tryLock(WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                    return;
+            } catch (final InterruptedException ex) {
+                interrupted = true;
+            }
+            throw FsNeedsLockRetryException.get();
+        }
+
+        /**
+         * Prepares the next retry by releasing the held lock and then either
+         * waiting for the contended lock or pausing.
+         * Interrupting the current thread has no effect on this method.
+         */
+        void retry() {
+            unlock();
+            final Lock contended = this.contended;
+            this.contended = null;
+            final long start = System.nanoTime();
+            final boolean wait = WAIT_FOR_CONTENDED_LOCK && null != contended;
+            boolean timedOut = false;
+            if (wait) {
+                interrupted |= Thread.interrupted();
+                try {
+                    if (!contended.tryLock(WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                        timedOut = true;
+                    else if (contended instanceof WriteLock)
+                        held = contended;
+                    else
+                        contended.unlock();
+                } catch (final InterruptedException ex) {
+                    interrupted = true;
+                }
+            } else {
+                pause();
+            }
+            FsLockStatistics.SINGLETON.record(
+                    System.nanoTime() - start, wait, timedOut);
+        }
+
+        /** Releases the held lock, if any. */
+        private void unlock() {
+            final Lock held = this.held;
+            if (null != held) {
+                this.held = null;
+                held.unlock();
+            }
+        }
+
+        /**
+         * Releases the held lock, if any, and restores the interrupt status
+         * of the current thread.
+         */
+        void release() {
+            unlock();
+            if (interrupted) {
+                interrupted = false;
+                Thread.currentThread().interrupt(); // restore
+            }
+        }
+
         /**
          * Delays the current thread for a random time interval between one and
          * {@link #WAIT_TIMEOUT_MILLIS} milliseconds inclusively.
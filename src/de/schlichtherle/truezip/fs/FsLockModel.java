@@ -37,6 +37,10 @@ final class FsLockModel extends FsDecoratingModel<FsModel> {
 
     WriteLock writeLock() { return lock.writeLock(); }
 
+    boolean isWriteLocked() {
+        return lock.isWriteLocked();
+    }
+
     /**
      * Returns {@code true} if and only if the write lock is held by the
      * current thread.
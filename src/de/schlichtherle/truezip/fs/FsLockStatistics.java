@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.fs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process wide statistics for the lock retries of the file system
+ * controllers.
+ * A lock retry happens whenever a file system operation needs to acquire
+ * the lock of another file system, e.g. of a parent archive file, but this
+ * lock is held by another thread.
+ * In this case, the operation releases all locks, waits for a while and
+ * starts over again.
+ * <p>
+ * The time spent waiting is recorded in a histogram with
+ * {@value #BUCKETS} buckets.
+ * Bucket zero counts the waits which took less than one millisecond.
+ * Bucket <i>i</i> for <i>0 &lt; i &lt; {@value #BUCKETS} - 1</i> counts the
+ * waits which took at least <i>2<sup>i-1</sup></i>, but less than
+ * <i>2<sup>i</sup></i> milliseconds.
+ * The last bucket counts all longer waits.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class FsLockStatistics {
+
+    /** The number of buckets in the wait time histogram, which is {@value}. */
+    public static final int BUCKETS = 12;
+
+    /** The statistics which are used by the classes in this package. */
+    public static final FsLockStatistics SINGLETON = new FsLockStatistics();
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    private FsLockStatistics() { }
+
+    /** Returns the number of lock retries. */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Returns the number of lock retries which have waited for the
+     * contended lock rather than pausing for a random time interval.
+     */
+    public long getWaits() {
+        return waits.get();
+    }
+
+    /**
+     * Returns the number of lock retries which have timed out while
+     * waiting for the contended lock.
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Returns a copy of the wait time histogram.
+     *
+     * @return A copy of the wait time histogram.
+     */
+    public long[] getWaitTimeHistogram() {
+        final long[] copy = new long[BUCKETS];
+        for (int i = BUCKETS; 0 <= --i; )
+            copy[i] = histogram.get(i);
+        return copy;
+    }
+
+    /** Resets all statistics to zero. */
+    public void clear() {
+        retries.set(0);
+        waits.set(0);
+        timeouts.set(0);
+        for (int i = BUCKETS; 0 <= --i; )
+            histogram.set(i, 0);
+    }
+
+    /**
+     * Records a lock retry.
+     *
+     * @param nanos the time spent waiting.
+     * @param waited whether or not the contended lock has been waited for.
+     * @param timedOut whether or not waiting for the contended lock has
+     *        timed out.
+     */
+    void record(final long nanos, final boolean waited, final boolean timedOut) {
+        retries.incrementAndGet();
+        if (waited)
+            waits.incrementAndGet();
+        if (timedOut)
+            timeouts.incrementAndGet();
+        final long millis = nanos / 1000000;
+        final int bucket = 0 >= millis
+                ? 0
+                : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+        histogram.incrementAndGet(bucket);
+    }
+}
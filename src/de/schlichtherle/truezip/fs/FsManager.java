@@ -6,7 +6,17 @@ package de.schlichtherle.truezip.fs;
 
 import static de.schlichtherle.truezip.fs.FsSyncOption.ABORT_CHANGES;
 import de.schlichtherle.truezip.util.BitField;
+import de.schlichtherle.truezip.util.ThreadGroups;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A container which creates {@linkplain FsController} file system controllers
@@ -20,6 +30,17 @@ import java.util.Iterator;
  */
 public abstract class FsManager implements Iterable<FsController<?>> {
 
+    /**
+     * The maximum number of threads for {@link #sync(BitField) sync()ing}
+     * file system controllers concurrently.
+     * This gets read from the system property
+     * {@code de.schlichtherle.truezip.fs.FsManager.syncThreads}
+     * and defaults to one, which means that all file system controllers get
+     * sync()ed by the current thread.
+     */
+    static final int SYNC_THREADS = Math.max(1, Integer.getInteger(
+            FsManager.class.getName() + ".syncThreads", 1));
+
     /**
      * <em>Optional:</em>
      * Returns a new thread-safe archive file system controller.
@@ -74,6 +95,26 @@ public abstract class FsManager implements Iterable<FsController<?>> {
     @Override
     public abstract Iterator<FsController<?>> iterator();
 
+    /**
+     * Returns an ordered iterator for the managed file system controllers
+     * which have a hierarchical mount point URI with the given scheme and a
+     * path which starts with the given prefix.
+     * The iterator may return more file system controllers than these, so
+     * the caller still needs to filter them.
+     * <p>
+     * The implementation in the class {@link FsManager} simply returns
+     * {@link #iterator()}.
+     *
+     * @param  scheme the scheme of the hierarchical mount point URIs.
+     * @param  path the prefix of the path of the hierarchical mount point
+     *         URIs.
+     * @return An ordered iterator for a superset of the managed file system
+     *         controllers with the given scheme and path prefix.
+     */
+    Iterator<FsController<?>> iterator(String scheme, String path) {
+        return iterator();
+    }
+
     /**
      * Calls {@link FsController#sync(BitField)} on all managed file system
      * controllers.
@@ -82,6 +123,14 @@ public abstract class FsManager implements Iterable<FsController<?>> {
      * continues with sync()ing the remaining file system controllers.
      * After the loop, the exception(s) get processed for (re)throwing based
      * on their type and order of appearance.
+     * <p>
+     * If the system property
+     * {@code de.schlichtherle.truezip.fs.FsManager.syncThreads} is set to a
+     * number greater than one, then file system controllers which are not
+     * nested in each other get sync()ed concurrently by up to this number of
+     * threads.
+     * A file system controller still gets sync()ed only after all file
+     * system controllers of its nested file systems.
      *
      * @param  options the options for synchronizing the file system.
      * @throws FsSyncWarningException if <em>only</em> warning conditions
@@ -98,16 +147,141 @@ public abstract class FsManager implements Iterable<FsController<?>> {
     throws FsSyncWarningException, FsSyncException {
         if (options.get(ABORT_CHANGES)) throw new IllegalArgumentException();
         final FsSyncExceptionBuilder builder = new FsSyncExceptionBuilder();
-        for (final FsController<?> controller : this) {
-            try {
-                controller.sync(options);
-            } catch (final FsSyncException ex) {
-                builder.warn(ex);
+        if (1 < SYNC_THREADS) {
+            new ParallelSync(this, options, builder).run(SYNC_THREADS);
+        } else {
+            for (final FsController<?> controller : this) {
+                try {
+                    controller.sync(options);
+                } catch (final FsSyncException ex) {
+                    builder.warn(ex);
+                }
             }
         }
         builder.check();
     }
 
+    /**
+     * Sync()s the file system controllers of a manager concurrently.
+     * The controllers get arranged in a forest where the parent of each node
+     * is the node of the closest enclosing file system.
+     * Initially, all leaves get submitted to an executor.
+     * When all children of a node have been sync()ed, the node gets
+     * submitted, too.
+     */
+    private static final class ParallelSync {
+        final BitField<FsSyncOption> options;
+        final FsSyncExceptionBuilder builder;
+        final List<Node> nodes;
+        final CountDownLatch done;
+        ExecutorService executor;
+        volatile Throwable failure;
+
+        ParallelSync(
+                final FsManager manager,
+                final BitField<FsSyncOption> options,
+                final FsSyncExceptionBuilder builder) {
+            this.options = options;
+            this.builder = builder;
+            final Map<FsMountPoint, Node> index
+                    = new HashMap<FsMountPoint, Node>();
+            final List<Node> nodes = new ArrayList<Node>();
+            for (final FsController<?> controller : manager) {
+                final Node node = new Node(controller);
+                index.put(controller.getModel().getMountPoint(), node);
+                nodes.add(node);
+            }
+            for (final Node node : nodes) {
+                for (   FsMountPoint mp = node.controller.getModel()
+                            .getMountPoint().getParent();
+                        null != mp;
+                        mp = mp.getParent()) {
+                    final Node parent = index.get(mp);
+                    if (null != parent) {
+                        node.parent = parent;
+                        parent.pending.incrementAndGet();
+                        break;
+                    }
+                }
+            }
+            this.nodes = nodes;
+            this.done = new CountDownLatch(nodes.size());
+        }
+
+        void run(final int threads) throws FsSyncException {
+            final int size = nodes.size();
+            if (0 >= size)
+                return;
+            executor = Executors.newFixedThreadPool(
+                    Math.min(threads, size), new SyncThreadFactory());
+            boolean interrupted = false;
+            try {
+                for (final Node node : nodes)
+                    if (0 == node.pending.get())
+                        executor.execute(node);
+                while (true) {
+                    try {
+                        done.await();
+                        break;
+                    } catch (final InterruptedException ex) {
+                        // A half-way sync is worse than a late one.
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                executor.shutdown();
+                if (interrupted)
+                    Thread.currentThread().interrupt(); // restore
+            }
+            final Throwable ex = failure;
+            if (ex instanceof RuntimeException)
+                throw (RuntimeException) ex;
+            if (ex instanceof Error)
+                throw (Error) ex;
+        }
+
+        private final class Node implements Runnable {
+            final FsController<?> controller;
+            final AtomicInteger pending = new AtomicInteger();
+            Node parent;
+
+            Node(final FsController<?> controller) {
+                this.controller = controller;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    if (null == failure)
+                        controller.sync(options);
+                } catch (final FsSyncException ex) {
+                    synchronized (builder) {
+                        builder.warn(ex);
+                    }
+                } catch (final Throwable ex) {
+                    failure = ex;
+                } finally {
+                    final Node parent = this.parent;
+                    if (null != parent
+                            && 0 == parent.pending.decrementAndGet())
+                        executor.execute(parent);
+                    done.countDown();
+                }
+            }
+        } // Node
+    } // ParallelSync
+
+    private static final class SyncThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(
+                    ThreadGroups.getServerThreadGroup(), r,
+                    FsManager.class.getName() + ".SyncThread");
+            thread.setDaemon(true);
+            return thread;
+        }
+    } // SyncThreadFactory
+
     /**
      * Two file system managers are considered equal if and only if they are
      * identical. This can't get overriden.
@@ -15,6 +15,7 @@ import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -38,18 +39,35 @@ import java.util.concurrent.locks.ReentrantLock;
 final class FsResourceAccountant {
 
     /**
-     * The map of all accounted closeable resources.
-     * The initial capacity for the hash map accounts for the number of
-     * available processors, a 90% blocking factor for typical I/O and a 2/3
-     * map resize threshold.
+     * The concurrency level for the map of accounted closeable resources,
+     * which accounts for the number of available processors and a 90%
+     * blocking factor for typical I/O.
      */
-    private static final ConcurrentMap<Closeable, Account> accounts;
-    static {
-        final int threads = Runtime.getRuntime().availableProcessors() * 10;
-        final int initialCapacity = HashMaps.initialCapacity(threads);
-        accounts = new ConcurrentHashMap<Closeable, Account>(
-                initialCapacity, 0.75f, threads);
-    }
+    private static final int THREADS
+            = Runtime.getRuntime().availableProcessors() * 10;
+
+    /** The map of the closeable resources accounted for by this accountant. */
+    private final ConcurrentMap<Closeable, Account> accounts
+            = new ConcurrentHashMap<Closeable, Account>(
+                HashMaps.initialCapacity(16), 0.75f, THREADS);
+
+    /** The number of closeable resources accounted for by all threads. */
+    private final AtomicInteger total = new AtomicInteger();
+
+    /**
+     * The counters for the closeable resources accounted for by each
+     * thread.
+     * Each account refers to the counter of the thread which has created it,
+     * so that it gets decremented even if another thread stops accounting
+     * for the resource.
+     */
+    private final ThreadLocal<AtomicInteger> locals
+            = new ThreadLocal<AtomicInteger>() {
+                @Override
+                protected AtomicInteger initialValue() {
+                    return new AtomicInteger();
+                }
+            };
 
     private final Lock lock;
     private final Condition condition;
@@ -76,7 +94,13 @@ final class FsResourceAccountant {
      * @param resource the closeable resource to start accounting for.
      */
     void startAccountingFor(final Closeable resource) {
-        accounts.put(resource, new Account());
+        final Account account = new Account(locals.get());
+        account.local.incrementAndGet();
+        final Account old = accounts.put(resource, account);
+        if (null != old)
+            old.local.decrementAndGet();
+        else
+            total.incrementAndGet();
     }
 
     /**
@@ -87,7 +111,10 @@ final class FsResourceAccountant {
      * @param resource the closeable resource to stop accounting for.
      */
     void stopAccountingFor(final Closeable resource) {
-        if (null != accounts.remove(resource)) {
+        final Account account = accounts.remove(resource);
+        if (null != account) {
+            account.local.decrementAndGet();
+            total.decrementAndGet();
             lock.lock();
             try {
                 condition.signalAll();
@@ -157,15 +184,7 @@ final class FsResourceAccountant {
      * @return The number of closeable resources which have been accounted for.
      */
     Resources resources() {
-        final Thread currentThread = Thread.currentThread();
-        int local = 0, total = 0;
-        for (final Account account : accounts.values()) {
-            if (account.getAccountant() == this) {
-                if (account.owner == currentThread) local++;
-                total++;
-            }
-        }
-        return new Resources(local, total);
+        return new Resources(locals.get().get(), total.get());
     }
 
     /**
@@ -186,10 +205,11 @@ final class FsResourceAccountant {
                         i = accounts.entrySet().iterator();
                     i.hasNext(); ) {
                 final Entry<Closeable, Account> entry = i.next();
-                final Account account = entry.getValue();
-                if (account.getAccountant() != this) continue;
-                i.remove();
                 final Closeable closeable = entry.getKey();
+                final Account account = entry.getValue();
+                if (!accounts.remove(closeable, account)) continue;
+                account.local.decrementAndGet();
+                total.decrementAndGet();
                 try {
                     // This should trigger an attempt to remove the closeable
                     // from the map, but it can cause no
@@ -210,11 +230,12 @@ final class FsResourceAccountant {
         }
     }
 
-    private final class Account {
-        final Thread owner = Thread.currentThread();
+    private static final class Account {
+        /** The counter of the thread which has created this account. */
+        final AtomicInteger local;
 
-        FsResourceAccountant getAccountant() {
-            return FsResourceAccountant.this;
+        Account(final AtomicInteger local) {
+            this.local = local;
         }
     } // Account
 
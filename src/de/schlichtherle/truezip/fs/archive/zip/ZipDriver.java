@@ -56,7 +56,10 @@ import java.util.zip.Deflater;
  */
 public class ZipDriver
 extends FsCharsetArchiveDriver<ZipDriverEntry>
-implements ZipOutputStreamParameters, ZipFileParameters<ZipDriverEntry> {
+implements  ZipOutputStreamParameters,
+            ZipDeflaterParameters,
+            ZipFileParameters<ZipDriverEntry>,
+            ZipCentralDirectoryParameters {
 
     private static final Logger logger = Logger.getLogger(ZipDriver.class.getName());
 
@@ -350,6 +353,80 @@ implements ZipOutputStreamParameters, ZipFileParameters<ZipDriverEntry> {
         return Deflater.BEST_COMPRESSION;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The implementation in the class {@link ZipDriver}
+     * returns {@code 1}, which disables parallel deflating.
+     * Override this method in order to deflate the entries of a ZIP file
+     * on a pool with the returned number of worker threads, e.g.
+     * {@code Runtime.getRuntime().availableProcessors()}.
+     *
+     * @return {@code 1}
+     */
+    @Override
+    public int getDeflaterThreads() {
+        return 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The implementation in the class {@link ZipDriver}
+     * returns {@code 1024 * 1024}.
+     *
+     * @return {@code 1024 * 1024}
+     */
+    @Override
+    public int getDeflaterBufferSize() {
+        return 1024 * 1024;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The implementation in the class {@link ZipDriver}
+     * returns {@code 16 * 1024 * 1024}.
+     * This is only used if {@link #getDeflaterThreads()} returns two or
+     * more.
+     *
+     * @return {@code 16 * 1024 * 1024}
+     */
+    @Override
+    public long getBlockDeflaterThreshold() {
+        return 16 * 1024 * 1024;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The implementation in the class {@link ZipDriver} returns
+     * {@code false} because the archive file system creates its own
+     * entries for all entries in the ZIP file anyway.
+     *
+     * @return {@code false}
+     */
+    @Override
+    public boolean getCompactCentralDirectory() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The implementation in the class {@link ZipDriver}
+     * returns {@code 1}, which disables parallel parsing.
+     * Override this method in order to parse the central directory of
+     * large ZIP files on the returned number of threads, e.g.
+     * {@code Runtime.getRuntime().availableProcessors()}.
+     *
+     * @return {@code 1}
+     */
+    @Override
+    public int getCentralDirectoryThreads() {
+        return 1;
+    }
+
     /**
      * {@inheritDoc}
      * <p>
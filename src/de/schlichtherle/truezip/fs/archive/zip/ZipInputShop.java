@@ -6,11 +6,13 @@ package de.schlichtherle.truezip.fs.archive.zip;
 
 import de.schlichtherle.truezip.entry.Entry;
 import de.schlichtherle.truezip.fs.FsModel;
+import de.schlichtherle.truezip.fs.FsMountPoint;
 import de.schlichtherle.truezip.rof.ReadOnlyFile;
 import de.schlichtherle.truezip.socket.InputShop;
 import de.schlichtherle.truezip.socket.InputSocket;
 import de.schlichtherle.truezip.zip.RawZipFile;
 import de.schlichtherle.truezip.zip.ZipCryptoParameters;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -35,7 +37,7 @@ implements InputShop<ZipDriverEntry> {
             final FsModel model,
             final ReadOnlyFile rof)
     throws IOException {
-        super(rof, driver);
+        super(rof, file(model), driver);
         this.driver = driver;
         if (null == (this.model = model)) {
             final NullPointerException ex = new NullPointerException();
@@ -48,6 +50,27 @@ implements InputShop<ZipDriverEntry> {
         }
     }
 
+    /**
+     * Returns the file in the platform file system which holds the archive
+     * file of the given model or {@code null} if the archive file is nested
+     * in another archive file.
+     */
+    private static File file(final FsModel model) {
+        if (null == model)
+            return null;
+        final FsMountPoint mp = model.getMountPoint();
+        final FsMountPoint parent = mp.getParent();
+        if (null == parent
+                || null != parent.getParent()
+                || !"file".equals(parent.getScheme().toString()))
+            return null;
+        try {
+            return new File(mp.toHierarchicalUri());
+        } catch (final IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
     /**
      * Returns the file system model provided to the constructor.
      *
@@ -4,7 +4,7 @@
  */
 package de.schlichtherle.truezip.fs.file;
 
-import de.schlichtherle.truezip.rof.DefaultReadOnlyFile;
+import de.schlichtherle.truezip.rof.MappedReadOnlyFile;
 import de.schlichtherle.truezip.rof.ReadOnlyFile;
 import de.schlichtherle.truezip.socket.InputSocket;
 import java.io.FileInputStream;
@@ -33,7 +33,7 @@ final class FileInputSocket extends InputSocket<FileEntry> {
 
     @Override
     public ReadOnlyFile newReadOnlyFile() throws IOException {
-        return new DefaultReadOnlyFile(entry.getFile());
+        return MappedReadOnlyFile.newReadOnlyFile(entry.getFile());
     }
 
     @Override
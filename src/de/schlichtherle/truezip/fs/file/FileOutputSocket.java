@@ -8,6 +8,7 @@ import de.schlichtherle.truezip.entry.Entry;
 import static de.schlichtherle.truezip.entry.Entry.Access.WRITE;
 import static de.schlichtherle.truezip.entry.Entry.UNKNOWN;
 import de.schlichtherle.truezip.fs.FsOutputOption;
+import de.schlichtherle.truezip.io.FileChannelSink;
 import static de.schlichtherle.truezip.fs.FsOutputOption.APPEND;
 import static de.schlichtherle.truezip.fs.FsOutputOption.CACHE;
 import static de.schlichtherle.truezip.fs.FsOutputOption.CREATE_PARENTS;
@@ -15,11 +16,13 @@ import static de.schlichtherle.truezip.fs.FsOutputOption.EXCLUSIVE;
 import de.schlichtherle.truezip.socket.IOSocket;
 import de.schlichtherle.truezip.socket.OutputSocket;
 import de.schlichtherle.truezip.util.BitField;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import static java.lang.Boolean.TRUE;
 
 /**
@@ -138,13 +141,36 @@ final class FileOutputSocket extends OutputSocket<FileEntry> {
     public OutputStream newOutputStream() throws IOException {
         final FileEntry temp = begin();
 
-        class OutputStream extends de.schlichtherle.truezip.io.IOExceptionOutputStream {
+        class OutputStream extends de.schlichtherle.truezip.io.IOExceptionOutputStream
+        implements FileChannelSink {
             boolean closed;
 
             OutputStream() throws FileNotFoundException {
                 super(new FileOutputStream(temp.getFile(), options.get(APPEND))); // Do NOT extend FileOutputStream: It implements finalize(), which may cause deadlocks!
             }
 
+            @Override
+            public long transferFrom(
+                    final FileChannel src,
+                    final long position,
+                    final long count)
+            throws IOException {
+                try {
+                    final FileChannel dst
+                            = ((FileOutputStream) delegate).getChannel();
+                    for (long done = 0; done < count; ) {
+                        final long n = src.transferTo(
+                                position + done, count - done, dst);
+                        if (0 >= n && position + done >= src.size())
+                            throw new EOFException();
+                        done += n;
+                    }
+                    return count;
+                } catch (IOException ex) {
+                    throw exception = ex;
+                }
+            }
+
             @Override
             public void close() throws IOException {
                 if (closed) return;
@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.fs.file;
+
+import de.schlichtherle.truezip.entry.Entry.Access;
+import static de.schlichtherle.truezip.entry.Entry.Access.WRITE;
+import de.schlichtherle.truezip.entry.Entry.Size;
+import static de.schlichtherle.truezip.entry.Entry.UNKNOWN;
+import de.schlichtherle.truezip.io.OutputClosedException;
+import de.schlichtherle.truezip.rof.AbstractReadOnlyFile;
+import de.schlichtherle.truezip.rof.ReadOnlyFile;
+import de.schlichtherle.truezip.socket.IOPool;
+import de.schlichtherle.truezip.socket.InputSocket;
+import de.schlichtherle.truezip.socket.OutputSocket;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This I/O pool keeps the contents of its buffers in memory chunks until
+ * they exceed a size threshold.
+ * Then the contents get spilled to a temporary file which gets allocated
+ * from a {@link TempFilePool}.
+ * This avoids creating, writing, reading and deleting a temporary file for
+ * each small buffer.
+ * <p>
+ * The memory chunks are either heap or direct byte buffers.
+ * Direct byte buffers are recycled by the pool when the contents of a
+ * buffer get replaced or released and all read only files which have been
+ * opened on them have been closed.
+ * <p>
+ * The threshold gets read from the system property
+ * {@code de.schlichtherle.truezip.fs.file.MemoryPool.threshold}
+ * and defaults to {@value #DEFAULT_THRESHOLD} bytes.
+ * Whether or not direct byte buffers get used gets read from the system
+ * property {@code de.schlichtherle.truezip.fs.file.MemoryPool.direct}
+ * and defaults to {@code false}.
+ *
+ * @author Christian Schlichtherle
+ */
+final class MemoryPool implements IOPool<MemoryPool.Buffer> {
+
+    /** The default size threshold for spilling to a file, which is {@value}. */
+    static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+    /** The size of a memory chunk, which is {@value}. */
+    static final int CHUNK_SIZE = 8 * 1024;
+
+    /** The maximum number of recycled direct chunks, which is {@value}. */
+    static final int MAX_FREE_CHUNKS = 256;
+
+    private static final ByteBuffer[] NO_CHUNKS = new ByteBuffer[0];
+
+    /** A default instance of this pool. */
+    static final MemoryPool INSTANCE = new MemoryPool(
+            Integer.getInteger(
+                MemoryPool.class.getName() + ".threshold",
+                DEFAULT_THRESHOLD),
+            Boolean.getBoolean(MemoryPool.class.getName() + ".direct"),
+            TempFilePool.INSTANCE);
+
+    private final int threshold;
+    private final boolean direct;
+    private final TempFilePool files;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger freeChunks = new AtomicInteger();
+
+    MemoryPool( final int threshold,
+                final boolean direct,
+                final TempFilePool files) {
+        if (0 > threshold)
+            throw new IllegalArgumentException();
+        if (null == files)
+            throw new NullPointerException();
+        this.threshold = threshold;
+        this.direct = direct;
+        this.files = files;
+    }
+
+    @Override
+    public Buffer allocate() throws IOException {
+        return new Buffer();
+    }
+
+    @Override
+    public void release(Entry<Buffer> resource) throws IOException {
+        resource.release();
+    }
+
+    private ByteBuffer newChunk() {
+        if (!direct)
+            return ByteBuffer.allocate(CHUNK_SIZE);
+        final ByteBuffer chunk = free.poll();
+        if (null == chunk)
+            return ByteBuffer.allocateDirect(CHUNK_SIZE);
+        freeChunks.decrementAndGet();
+        chunk.clear();
+        return chunk;
+    }
+
+    private void recycle(final ByteBuffer[] chunks) {
+        if (!direct)
+            return;
+        for (final ByteBuffer chunk : chunks) {
+            if (MAX_FREE_CHUNKS < freeChunks.incrementAndGet()) {
+                freeChunks.decrementAndGet();
+                return;
+            }
+            free.offer(chunk);
+        }
+    }
+
+    /**
+     * The immutable contents of a buffer.
+     * The memory chunks are reference counted:
+     * The buffer holds one reference until it replaces or releases its
+     * contents and each open {@link ChunkReadOnlyFile} holds another one.
+     * The chunks get recycled when the last reference gets dropped.
+     */
+    private final class Data {
+        final ByteBuffer[] chunks;
+        final int size;
+        final Entry<FileEntry> file;
+        final long time;
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        Data(   final ByteBuffer[] chunks,
+                final int size,
+                final Entry<FileEntry> file,
+                final long time) {
+            this.chunks = chunks;
+            this.size = size;
+            this.file = file;
+            this.time = time;
+        }
+
+        /**
+         * Adds a reference to the memory chunks unless they have already
+         * been dropped by all holders.
+         *
+         * @return Whether or not a reference has been added.
+         */
+        boolean retain() {
+            for (int refs; 0 < (refs = this.refs.get()); )
+                if (this.refs.compareAndSet(refs, refs + 1))
+                    return true;
+            return false;
+        }
+
+        /** Drops a reference to the memory chunks. */
+        void drop() {
+            final int refs = this.refs.decrementAndGet();
+            assert 0 <= refs;
+            if (0 == refs)
+                recycle(chunks);
+        }
+    } // Data
+
+    /** A memory pool entry. */
+    final class Buffer implements Entry<Buffer> {
+        private volatile Data data = new Data(
+                NO_CHUNKS, 0, null, System.currentTimeMillis());
+
+        Buffer() { }
+
+        @Override
+        public String getName() {
+            return toString();
+        }
+
+        @Override
+        public long getSize(final Size type) {
+            final Data data = this.data;
+            return null != data.file ? data.file.getSize(type) : data.size;
+        }
+
+        @Override
+        public long getTime(final Access type) {
+            return WRITE == type ? data.time : UNKNOWN;
+        }
+
+        @Override
+        public InputSocket<Buffer> getInputSocket() {
+            return new Input();
+        }
+
+        @Override
+        public OutputSocket<Buffer> getOutputSocket() {
+            return new Output();
+        }
+
+        /**
+         * Replaces the contents of this buffer.
+         * The memory chunks of the previous contents get recycled when the
+         * last reader has been closed.
+         */
+        void setData(final Data data) throws IOException {
+            final Data old = this.data;
+            this.data = data;
+            old.drop();
+            if (null != old.file)
+                old.file.release();
+        }
+
+        @Override
+        public void release() throws IOException {
+            setData(new Data(NO_CHUNKS, 0, null, this.data.time));
+        }
+
+        private final class Input extends InputSocket<Buffer> {
+            @Override
+            public Buffer getLocalTarget() {
+                return Buffer.this;
+            }
+
+            @Override
+            public ReadOnlyFile newReadOnlyFile() throws IOException {
+                while (true) {
+                    final Data data = Buffer.this.data;
+                    if (null != data.file)
+                        return data.file.getInputSocket().newReadOnlyFile();
+                    if (data.retain()) // else the contents have been replaced
+                        return new ChunkReadOnlyFile(data);
+                }
+            }
+
+            @Override
+            public InputStream newInputStream() throws IOException {
+                final Data data = Buffer.this.data;
+                return null != data.file
+                        ? data.file.getInputSocket().newInputStream()
+                        : super.newInputStream();
+            }
+        } // Input
+
+        private final class Output extends OutputSocket<Buffer> {
+            @Override
+            public Buffer getLocalTarget() {
+                return Buffer.this;
+            }
+
+            @Override
+            public OutputStream newOutputStream() throws IOException {
+                return new ChunkOutputStream();
+            }
+        } // Output
+
+        /**
+         * Writes to memory chunks until the threshold gets exceeded and then
+         * spills to a temporary file.
+         * The contents of the buffer get replaced when this stream gets
+         * closed.
+         */
+        private final class ChunkOutputStream extends OutputStream {
+            final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+            int size;
+            Entry<FileEntry> file;
+            OutputStream out;
+            boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] b, int off, int len)
+            throws IOException {
+                if (closed)
+                    throw new OutputClosedException();
+                if (null == out && threshold - size < len)
+                    spill();
+                if (null != out) {
+                    out.write(b, off, len);
+                    return;
+                }
+                while (0 < len) {
+                    final int last = chunks.size() - 1;
+                    ByteBuffer chunk = 0 <= last ? chunks.get(last) : null;
+                    if (null == chunk || !chunk.hasRemaining())
+                        chunks.add(chunk = newChunk());
+                    final int n = Math.min(len, chunk.remaining());
+                    chunk.put(b, off, n);
+                    off += n;
+                    len -= n;
+                    size += n;
+                }
+            }
+
+            private void spill() throws IOException {
+                final Entry<FileEntry> file = files.allocate();
+                final OutputStream out;
+                try {
+                    out = file.getOutputSocket().newOutputStream();
+                } catch (final IOException ex) {
+                    file.release();
+                    throw ex;
+                }
+                this.file = file;
+                this.out = out;
+                final ByteBuffer[] chunks = this.chunks.toArray(NO_CHUNKS);
+                this.chunks.clear();
+                final byte[] buf = direct && 0 < chunks.length
+                        ? new byte[CHUNK_SIZE]
+                        : null;
+                for (final ByteBuffer chunk : chunks) {
+                    if (chunk.hasArray()) {
+                        out.write(chunk.array(), chunk.arrayOffset(),
+                                chunk.position());
+                    } else {
+                        final int n = chunk.position();
+                        chunk.flip();
+                        chunk.get(buf, 0, n);
+                        out.write(buf, 0, n);
+                    }
+                }
+                recycle(chunks);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (null != out)
+                    out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed)
+                    return;
+                closed = true;
+                if (null != out)
+                    out.close();
+                final ByteBuffer[] chunks = this.chunks.toArray(NO_CHUNKS);
+                for (final ByteBuffer chunk : chunks)
+                    chunk.flip();
+                setData(new Data(chunks, size, file,
+                        System.currentTimeMillis()));
+            }
+        } // ChunkOutputStream
+    } // Buffer
+
+    /**
+     * Reads the memory chunks of the contents of a buffer.
+     * The given contents must have been retained for this file, which drops
+     * its reference when it gets closed.
+     */
+    private static final class ChunkReadOnlyFile extends AbstractReadOnlyFile {
+        private final Data data;
+        private final ByteBuffer[] chunks;
+        private final int size;
+        private int pos;
+        private boolean closed;
+
+        ChunkReadOnlyFile(final Data data) {
+            this.data = data;
+            final ByteBuffer[] chunks = data.chunks.clone();
+            for (int i = chunks.length; 0 <= --i; )
+                chunks[i] = chunks[i].duplicate();
+            this.chunks = chunks;
+            this.size = data.size;
+        }
+
+        private void assertOpen() throws IOException {
+            if (closed)
+                throw new IOException("File is closed!");
+        }
+
+        @Override
+        public long length() throws IOException {
+            assertOpen();
+            return size;
+        }
+
+        @Override
+        public long getFilePointer() throws IOException {
+            assertOpen();
+            return pos;
+        }
+
+        @Override
+        public void seek(final long pos) throws IOException {
+            assertOpen();
+            if (pos < 0)
+                throw new IOException("File pointer must not be negative!");
+            this.pos = (int) Math.min(pos, size);
+        }
+
+        @Override
+        public int read() throws IOException {
+            assertOpen();
+            final int pos = this.pos;
+            if (pos >= size)
+                return -1;
+            this.pos = pos + 1;
+            return chunks[pos / CHUNK_SIZE].get(pos % CHUNK_SIZE) & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] dst, final int offset, final int remaining)
+        throws IOException {
+            // Check no-op first for compatibility with RandomAccessFile.
+            if (remaining <= 0)
+                return 0;
+
+            // Check is open and not at EOF.
+            assertOpen();
+            int pos = this.pos;
+            final int available = size - pos;
+            if (available <= 0)
+                return -1;
+
+            // Check parameters.
+            if (0 > (offset | remaining | dst.length - offset - remaining))
+                throw new IndexOutOfBoundsException();
+
+            // Copy chunk data.
+            final int total = Math.min(remaining, available);
+            for (int copied = 0; copied < total; ) {
+                final ByteBuffer chunk = chunks[pos / CHUNK_SIZE];
+                final int chunkPos = pos % CHUNK_SIZE;
+                final int n = Math.min(total - copied, chunk.limit() - chunkPos);
+                chunk.position(chunkPos);
+                chunk.get(dst, offset + copied, n);
+                copied += n;
+                pos += n;
+            }
+            this.pos = pos;
+            return total;
+        }
+
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            data.drop();
+        }
+    } // ChunkReadOnlyFile
+}
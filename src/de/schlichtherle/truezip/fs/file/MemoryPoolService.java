@@ -0,0 +1,21 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.fs.file;
+
+import de.schlichtherle.truezip.socket.IOPool;
+import de.schlichtherle.truezip.socket.spi.IOPoolService;
+
+/**
+ * Contains {@link MemoryPool#INSTANCE}.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class MemoryPoolService extends IOPoolService {
+
+    @Override
+    public IOPool<?> get() {
+        return MemoryPool.INSTANCE;
+    }
+}
@@ -7,29 +7,103 @@ package de.schlichtherle.truezip.fs.file;
 import de.schlichtherle.truezip.socket.IOPool;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This I/O pool creates and deletes temporary files as {@link FileEntry}s.
+ * <p>
+ * Optionally, this pool keeps up to a configurable number of released
+ * temporary files on a free list.
+ * These files get truncated and reused by subsequent allocations instead
+ * of getting deleted and created again.
+ * This saves the updates of the directory metadata for write-intensive
+ * workloads.
+ * For the {@link #INSTANCE}, the maximum number of free files gets read
+ * from the system property
+ * {@code de.schlichtherle.truezip.fs.file.TempFilePool.maxFree}
+ * and defaults to zero, which disables reusing temporary files.
+ * The directory for the temporary files of the {@link #INSTANCE} gets read
+ * from the system property
+ * {@code de.schlichtherle.truezip.fs.file.TempFilePool.dir}
+ * and defaults to the directory for temporary files of the platform.
+ * A directory in a memory file system, e.g. {@code tmpfs}, is a good choice.
+ * <p>
+ * Temporary files of buffers which have not been released before they
+ * became unreachable get deleted on the next allocation or release of a
+ * buffer from any pool.
+ * Free files get deleted when the JVM shuts down.
  *
  * @author Christian Schlichtherle
  */
 final class TempFilePool implements IOPool<FileEntry> {
 
+    private static final Logger logger = Logger.getLogger(TempFilePool.class.getName());
+
+    /** The queue for the buffers which have become unreachable. */
+    private static final ReferenceQueue<Buffer>
+            queue = new ReferenceQueue<Buffer>();
+
+    /** The trackers of all allocated and not yet released buffers. */
+    private static final Set<Tracker> trackers = Collections.newSetFromMap(
+            new ConcurrentHashMap<Tracker, Boolean>());
+
     /**
      * A default instance of this pool.
      * Use this if you don't have special requirements regarding the temp file
      * prefix, suffix or directory.
      */
-    static final TempFilePool INSTANCE = new TempFilePool(null, null);
+    static final TempFilePool INSTANCE = new TempFilePool(
+            getDirectory(),
+            null,
+            Integer.getInteger(TempFilePool.class.getName() + ".maxFree", 0));
 
     private final File dir;
     private final String prefix;
+    private final int maxFree;
+    private final Queue<File> free = new ConcurrentLinkedQueue<File>();
+    private final AtomicInteger freeFiles = new AtomicInteger();
+    private volatile boolean closed;
 
     TempFilePool(
             final File dir,
             final String prefix) {
+        this(dir, prefix, 0);
+    }
+
+    TempFilePool(
+            final File dir,
+            final String prefix,
+            final int maxFree) {
+        if (0 > maxFree)
+            throw new IllegalArgumentException();
         this.dir = dir;
         this.prefix = null != prefix ? prefixPlusDot(prefix) : "tzp";
+        this.maxFree = maxFree;
+        if (0 < maxFree)
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    closed = true;
+                    clear();
+                }
+            });
+    }
+
+    private static File getDirectory() {
+        final String dir = System.getProperty(
+                TempFilePool.class.getName() + ".dir");
+        return null != dir ? new File(dir) : null;
     }
 
     private static String prefixPlusDot(String prefix) {
@@ -38,14 +112,20 @@ final class TempFilePool implements IOPool<FileEntry> {
 
     @Override
     public Buffer allocate() throws IOException {
-        return new Buffer(createTempFile(), this);
+        reclaim();
+        File file = free.poll();
+        if (null != file)
+            freeFiles.decrementAndGet();
+        else
+            file = createTempFile();
+        return new Buffer(file, this);
     }
 
     private File createTempFile() throws IOException {
         try {
             return File.createTempFile(prefix, null, dir);
         } catch (final IOException ex) {
-            if (dir.exists()) throw ex;
+            if (null == dir || dir.exists()) throw ex;
             createTempDir();
             return createTempFile();
         }
@@ -66,35 +146,120 @@ final class TempFilePool implements IOPool<FileEntry> {
         resource.release();
     }
 
+    /**
+     * Truncates the given released temporary file and puts it on the free
+     * list or deletes it if the free list is full.
+     * A file which does not exist anymore, e.g. because it has been renamed,
+     * gets ignored.
+     */
+    private void recycle(final File file) throws IOException {
+        if (0 < maxFree && !closed) {
+            if (freeFiles.incrementAndGet() <= maxFree) {
+                if (!file.isFile()) {
+                    freeFiles.decrementAndGet();
+                    return;
+                }
+                try {
+                    truncate(file);
+                    free.offer(file);
+                    if (closed)
+                        clear();
+                    return;
+                } catch (final IOException ex) {
+                    // Delete it instead.
+                }
+            }
+            freeFiles.decrementAndGet();
+        }
+        delete(file);
+    }
+
+    private static void truncate(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void delete(final File file) throws IOException {
+        if (!file.delete() && file.exists())
+            throw new IOException(file + " (cannot delete temporary file)");
+    }
+
+    /** Deletes all free files. */
+    private void clear() {
+        for (File file; null != (file = free.poll()); ) {
+            freeFiles.decrementAndGet();
+            file.delete();
+        }
+    }
+
+    /**
+     * Deletes the temporary files of all buffers which have become
+     * unreachable without getting released.
+     * These files do not get reused because there may still be open streams
+     * for them.
+     */
+    private static void reclaim() {
+        for (Reference<? extends Buffer> ref; null != (ref = queue.poll()); ) {
+            final Tracker tracker = (Tracker) ref;
+            if (!trackers.remove(tracker))
+                continue;
+            logger.log(Level.FINE, "Deleting the temporary file of an unreleased buffer: {0}", tracker.file);
+            try {
+                delete(tracker.file);
+            } catch (final IOException ex) {
+                logger.log(Level.WARNING, ex.toString(), ex);
+            }
+        }
+    }
+
+    /** Tracks a buffer in order to reclaim its file if it gets leaked. */
+    private static final class Tracker extends PhantomReference<Buffer> {
+        final File file;
+        final TempFilePool pool;
+
+        Tracker(final Buffer buffer, final File file, final TempFilePool pool) {
+            super(buffer, queue);
+            this.file = file;
+            this.pool = pool;
+            trackers.add(this);
+        }
+
+        void release() throws IOException {
+            if (!trackers.remove(this))
+                return;
+            clear();
+            pool.recycle(file);
+            reclaim();
+        }
+    } // Tracker
+
     /** A temp file pool entry. */
     private static final class Buffer
     extends FileEntry
     implements Entry<FileEntry> {
 
+        private volatile Tracker tracker;
+
         Buffer(File file, final TempFilePool pool) {
             super(file);
             assert null != file;
             assert null != pool;
             this.pool = pool;
-        }
-
-        @Override public void release() throws IOException { pool(null); }
-
-        private void pool(final TempFilePool newPool)
-        throws IOException {
-            final TempFilePool oldPool = this.pool;
-            this.pool = newPool;
-            if (oldPool != newPool) {
-                final File file = getFile();
-                if (!file.delete() && file.exists())
-                    throw new IOException(file + " (cannot delete temporary file)");
-            }
+            this.tracker = new Tracker(this, file, pool);
         }
 
         @Override
-        protected void finalize() throws Throwable {
-            try { pool(null); }
-            finally { super.finalize(); }
+        public void release() throws IOException {
+            final Tracker tracker = this.tracker;
+            if (null == tracker)
+                return;
+            this.tracker = null;
+            this.pool = null;
+            tracker.release();
         }
     } // Buffer
 }
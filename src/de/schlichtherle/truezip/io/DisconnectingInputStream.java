@@ -14,7 +14,8 @@ import java.io.InputStream;
  * @see    DisconnectingOutputStream
  * @author Christian Schlichtherle
  */
-public abstract class DisconnectingInputStream extends DecoratingInputStream {
+public abstract class DisconnectingInputStream extends DecoratingInputStream
+implements FileChannelSource {
 
     protected DisconnectingInputStream(InputStream in) {
         super(in);
@@ -67,6 +68,14 @@ public abstract class DisconnectingInputStream extends DecoratingInputStream {
         delegate.reset();
     }
 
+    @Override
+    public long transferTo(final FileChannelSink sink) throws IOException {
+        checkOpen();
+        return delegate instanceof FileChannelSource
+                ? ((FileChannelSource) delegate).transferTo(sink)
+                : -1;
+    }
+
     @Override
     public abstract void close() throws IOException;
 }
@@ -6,6 +6,7 @@ package de.schlichtherle.truezip.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * An abstract decorator which protects the decorated stream from all access
@@ -14,7 +15,8 @@ import java.io.OutputStream;
  * @see    DisconnectingInputStream
  * @author Christian Schlichtherle
  */
-public abstract class DisconnectingOutputStream extends DecoratingOutputStream {
+public abstract class DisconnectingOutputStream extends DecoratingOutputStream
+implements FileChannelSink {
 
     protected DisconnectingOutputStream(OutputStream out) {
         super(out);
@@ -50,6 +52,15 @@ public abstract class DisconnectingOutputStream extends DecoratingOutputStream {
         delegate.flush();
     }
 
+    @Override
+    public long transferFrom(FileChannel src, long position, long count)
+    throws IOException {
+        checkOpen();
+        return delegate instanceof FileChannelSink
+                ? ((FileChannelSink) delegate).transferFrom(src, position, count)
+                : -1;
+    }
+
     @Override
     public abstract void close() throws IOException;
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * An interface for output streams which can receive data directly from a
+ * {@link FileChannel}, i.e. without copying it through the heap.
+ * Decorating output streams should implement this interface if they
+ * forward the data to their decorated output stream unchanged.
+ * <p>
+ * This interface is used by {@link Streams#cat} in conjunction with
+ * {@link FileChannelSource} in order to transfer data between files by
+ * means of {@link FileChannel#transferTo}, which may get performed by the
+ * operating system kernel.
+ *
+ * @see    FileChannelSource
+ * @author Christian Schlichtherle
+ */
+public interface FileChannelSink {
+
+    /**
+     * Transfers the given region of the given file channel to this output
+     * stream.
+     * The position of the given file channel does not get changed.
+     *
+     * @param  src the file channel to read from.
+     * @param  position the position of the first byte to transfer.
+     * @param  count the number of bytes to transfer.
+     * @return {@code count} if all bytes have been transferred or
+     *         {@code -1} if this output stream cannot receive data from a
+     *         file channel in its current state.
+     *         In the latter case, no data has been written.
+     * @throws IOException on any I/O error.
+     */
+    long transferFrom(FileChannel src, long position, long count)
+    throws IOException;
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.io;
+
+import java.io.IOException;
+
+/**
+ * An interface for input streams which read a region of a
+ * {@link java.nio.channels.FileChannel} and can transfer their remaining
+ * data directly to a {@link FileChannelSink}.
+ * Decorating input streams should implement this interface if they
+ * forward the data of their decorated input stream unchanged.
+ *
+ * @see    FileChannelSink
+ * @see    Streams#cat
+ * @author Christian Schlichtherle
+ */
+public interface FileChannelSource {
+
+    /**
+     * Transfers the remaining data of this input stream to the given sink.
+     *
+     * @param  sink the sink to transfer the data to.
+     * @return The number of bytes transferred or {@code -1} if this input
+     *         stream or the given sink do not support transferring data in
+     *         their current state.
+     *         In the latter case, no data has been read or written.
+     * @throws IOException on any I/O error.
+     */
+    long transferTo(FileChannelSink sink) throws IOException;
+}
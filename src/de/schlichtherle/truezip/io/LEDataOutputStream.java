@@ -7,6 +7,7 @@ package de.schlichtherle.truezip.io;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * An output stream to write data in Little Endian (LE) format.
@@ -21,7 +22,7 @@ import java.io.OutputStream;
  */
 public class LEDataOutputStream
 extends DecoratingOutputStream
-implements DataOutput {
+implements DataOutput, FileChannelSink {
 
     /** This buffer is used for writing data. */
     private final byte[] buf = new byte[8];
@@ -47,7 +48,7 @@ implements DataOutput {
      * Increases the written counter by the specified value
      * until it reaches {@link Long#MAX_VALUE}.
      */
-    private void inc(int inc) {
+    private void inc(long inc) {
         final long temp = written + inc;
         written = temp >= 0 ? temp : Long.MAX_VALUE;
     }
@@ -86,6 +87,32 @@ implements DataOutput {
 	inc(len);
     }
 
+    /**
+     * Transfers the given region of the given file channel to the
+     * underlying output stream if it's a {@link FileChannelSink}.
+     * If no exception is thrown and the data has been transferred, the
+     * counter {@code written} is incremented by {@code count}.
+     *
+     * @param  src the file channel to read from.
+     * @param  position the position of the first byte to transfer.
+     * @param  count the number of bytes to transfer.
+     * @return {@code count} if all bytes have been transferred or
+     *         {@code -1} if the underlying output stream cannot receive data
+     *         from a file channel.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public long transferFrom(FileChannel src, long position, long count)
+    throws IOException {
+        if (!(delegate instanceof FileChannelSink))
+            return -1;
+        final long n = ((FileChannelSink) delegate)
+                .transferFrom(src, position, count);
+        if (0 <= n)
+            inc(n);
+        return n;
+    }
+
     /**
      * Writes a {@code boolean} value to the underlying output stream
      * as a 1-byte value. The value {@code true} is written out as the
@@ -6,6 +6,7 @@ package de.schlichtherle.truezip.io;
 
 import de.schlichtherle.truezip.util.ThreadGroups;
 import static de.schlichtherle.truezip.util.Throwables.wrap;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -14,9 +15,7 @@ import java.lang.ref.SoftReference;
 import java.util.Deque;
 import java.util.Queue;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Static utility methods for {@link InputStream}s and {@link OutputStream}s.
@@ -31,12 +30,41 @@ public class Streams {
      * A minimum of two elements is required.
      * The actual number is optimized to compensate for oscillating I/O
      * bandwidths like e.g. with network shares.
+     * This gets read from the system property
+     * {@code de.schlichtherle.truezip.io.Streams.fifoSize} and defaults to
+     * four.
      */
-    static final int FIFO_SIZE = 4;
+    static final int FIFO_SIZE = Math.max(2, Integer.getInteger(
+            Streams.class.getName() + ".fifoSize", 4));
 
     /** The buffer size used for reading and writing, which is {@value}. */
     public static final int BUFFER_SIZE = 8 * 1024;
 
+    /**
+     * The size of the buffers in the FIFO.
+     * This gets read from the system property
+     * {@code de.schlichtherle.truezip.io.Streams.fifoBufferSize} and defaults
+     * to {@link #BUFFER_SIZE}.
+     */
+    static final int FIFO_BUFFER_SIZE = Math.max(1, Integer.getInteger(
+            Streams.class.getName() + ".fifoBufferSize", BUFFER_SIZE));
+
+    /**
+     * The number of iterations a thread spins before it parks when waiting
+     * for the other thread in the FIFO.
+     * Spinning is pointless on a single processor system.
+     */
+    private static final int SPINS
+            = 1 < Runtime.getRuntime().availableProcessors() ? 1024 : 0;
+
+    /**
+     * The number of bytes which get copied by the current thread before a
+     * reader thread gets involved, which is {@value}.
+     * Most archive entries are smaller than this, so copying them doesn't
+     * cost any thread handoffs.
+     */
+    static final int SYNC_SIZE = 64 * 1024;
+
     private static final ExecutorService executor
             = Executors.newCachedThreadPool(new ReaderThreadFactory());
 
@@ -89,6 +117,15 @@ public class Streams {
      * the current thread.
      * It performs best when used with <em>unbuffered</em> streams.
      * <p>
+     * The first {@value #SYNC_SIZE} bytes get copied by the current thread,
+     * so the reader thread only gets involved for larger streams.
+     * If the input stream is a {@link ByteArrayInputStream}, then all data
+     * gets copied by the current thread because reading never blocks.
+     * <p>
+     * If the input stream is a {@link FileChannelSource} and the output
+     * stream is a {@link FileChannelSink}, then the data may get transferred
+     * between the underlying file channels directly instead.
+     * <p>
      * The name of this method is inspired by the Unix command line utility
      * {@code cat} because you could use it to con<i>cat</i>enate the contents
      * of multiple streams.
@@ -106,116 +143,92 @@ public class Streams {
         if (null == in || null == out)
             throw new NullPointerException();
 
-        // We will use a FIFO to exchange byte buffers between a pooled reader
-        // thread and the current writer thread.
-        // The pooled reader thread will fill the buffers with data from the
-        // input and the current thread will write the filled buffers to the
-        // output.
-        // The FIFO is simply implemented as a cached array or byte buffers
-        // with an offset and a size which is used like a ring buffer.
+        // Transfer the data without copying it through the heap if both
+        // streams support this.
+        if (in instanceof FileChannelSource
+                && out instanceof FileChannelSink
+                && 0 <= ((FileChannelSource) in)
+                    .transferTo((FileChannelSink) out)) {
+            out.flush();
+            return;
+        }
 
-        final Lock lock = new ReentrantLock();
-        final Condition signal = lock.newCondition();
         final Buffer[] buffers = Buffer.allocate();
+        try {
+            if (!catSync(in, out, buffers[0].buf,
+                    in instanceof ByteArrayInputStream
+                        ? Long.MAX_VALUE
+                        : SYNC_SIZE))
+                catAsync(in, out, buffers);
+        } finally {
+            Buffer.release(buffers);
+        }
+    }
 
-        /*
-         * The task that cycles through the buffers in order to fill them
-         * with input.
-         */
-        class ReaderTask implements Runnable {
-            /** The index of the next buffer to be written. */
-            int off;
-
-            /** The number of buffers filled with data to be written. */
-            int size;
-
-            /** The Throwable that happened in this task, if any. */
-            volatile Throwable exception;
-
-            @Override
-            public void run() {
-                // Cache some fields for better performance.
-                final InputStream in2 = in;
-                final Buffer[] buffers2 = buffers;
-                final int buffers2Length = buffers2.length;
-
-                // The writer executor interrupts this executor to signal
-                // that it cannot handle more input because there has been
-                // an IOException during writing.
-                // We stop processing in this case.
-                int read;
-                do {
-                    // Wait until a buffer is available.
-                    final Buffer buffer;
-                    lock.lock();
-                    try {
-                        while (size >= buffers2Length) {
-                            try {
-                                signal.await();
-                            } catch (InterruptedException cancel) {
-                                return;
-                            }
-                        }
-                        buffer = buffers2[(off + size) % buffers2Length];
-                    } finally {
-                        lock.unlock();
-                    }
-
-                    // Fill buffer until end of file or buffer.
-                    // This should normally complete in one loop cycle, but
-                    // we do not depend on this as it would be a violation
-                    // of InputStream's contract.
-                    try {
-                        final byte[] buf = buffer.buf;
-                        read = in2.read(buf, 0, buf.length);
-                    } catch (final Throwable ex) {
-                        exception = ex;
-                        read = -1;
-                    }
-                    buffer.read = read;
-
-                    // Advance head and signal writer.
-                    lock.lock();
-                    try {
-                        size++;
-                        signal.signal(); // only the writer could be waiting now!
-                    } finally {
-                        lock.unlock();
-                    }
-                } while (0 <= read);
+    /**
+     * Copies data from the given input stream to the given output stream
+     * on the current thread until the end of the input stream has been
+     * reached or at least {@code max} bytes have been copied.
+     *
+     * @return {@code true} if and only if the end of the input stream has
+     *         been reached, in which case the output stream has been
+     *         flushed.
+     */
+    private static boolean catSync(
+            final InputStream in,
+            final OutputStream out,
+            final byte[] buf,
+            final long max)
+    throws IOException {
+        for (long total = 0; total < max; ) {
+            final int read;
+            try {
+                read = in.read(buf, 0, buf.length);
+            } catch (final IOException ex) {
+                out.flush();
+                if (ex instanceof InputException)
+                    throw ex;
+                throw new InputException(ex);
             }
-        } // ReaderTask
+            if (0 > read) {
+                out.flush();
+                return true;
+            }
+            out.write(buf, 0, read);
+            total += read;
+        }
+        return false;
+    }
 
+    /**
+     * Copies the remaining data from the given input stream to the given
+     * output stream using a pooled reader thread.
+     */
+    private static void catAsync(
+            final InputStream in,
+            final OutputStream out,
+            final Buffer[] buffers)
+    throws IOException {
+        // We will use a FIFO to exchange byte buffers between a pooled reader
+        // thread and the current writer thread.
+        // The pooled reader thread will fill the buffers with data from the
+        // input and the current thread will write the filled buffers to the
+        // output.
+        // The FIFO is implemented as a single producer, single consumer ring
+        // buffer over the cached array of byte buffers, so no locks are
+        // required for the handoff.
+        final ReaderTask reader = new ReaderTask(in, buffers);
+        final Future<?> result = executor.submit(reader);
+        final int buffersLength = buffers.length;
         boolean interrupted = false;
         try {
-            final ReaderTask reader = new ReaderTask();
-            final Future<?> result = executor.submit(reader);
-
-            // Cache some data for better performance.
-            final int buffersLength = buffers.length;
-
-            int write;
-            while (true) {
+            for (long tail = 0; ; ) {
                 // Wait until a buffer is available.
-                final int off;
-                final Buffer buffer;
-                lock.lock();
-                try {
-                    while (0 >= reader.size) {
-                        try {
-                            signal.await();
-                        } catch (InterruptedException interrupt) {
-                            interrupted = true;
-                        }
-                    }
-                    off = reader.off;
-                    buffer = buffers[off];
-                } finally {
-                    lock.unlock();
-                }
+                interrupted |= reader.awaitData(tail);
+                final Buffer buffer = buffers[(int) (tail % buffersLength)];
 
                 // Stop on last buffer.
-                write = buffer.read;
+                final int write = buffer.read;
                 if (write == -1)
                     break; // reader has terminated because of EOF or exception
 
@@ -235,14 +248,7 @@ public class Streams {
                 }
 
                 // Advance tail and signal reader.
-                lock.lock();
-                try {
-                    reader.off = (off + 1) % buffersLength;
-                    reader.size--;
-                    signal.signal(); // only the reader could be waiting now!
-                } finally {
-                    lock.unlock();
-                }
+                reader.release(++tail);
             }
             out.flush();
 
@@ -259,7 +265,6 @@ public class Streams {
         } finally {
             if (interrupted)
                 Thread.currentThread().interrupt(); // restore
-            Buffer.release(buffers);
         }
     }
 
@@ -292,6 +297,135 @@ public class Streams {
         }
     }
 
+    /**
+     * The task that cycles through the buffers in order to fill them with
+     * input.
+     * The reader thread is the only one which advances the head of the ring
+     * and the writer thread is the only one which advances its tail.
+     * A thread which has to wait for the other one spins for a few
+     * iterations on a multi processor system and then parks until it gets
+     * unparked by the other thread.
+     */
+    private static final class ReaderTask implements Runnable {
+        final InputStream in;
+        final Buffer[] buffers;
+
+        /** The number of buffers filled with data so far. */
+        volatile long head;
+
+        /** The number of buffers written so far. */
+        volatile long tail;
+
+        /** The reader thread if it's about to park, otherwise null. */
+        volatile Thread reader;
+
+        /** The writer thread if it's about to park, otherwise null. */
+        volatile Thread writer;
+
+        /** The Throwable that happened in this task, if any. */
+        volatile Throwable exception;
+
+        ReaderTask(final InputStream in, final Buffer[] buffers) {
+            this.in = in;
+            this.buffers = buffers;
+        }
+
+        @Override
+        public void run() {
+            // Cache some fields for better performance.
+            final InputStream in = this.in;
+            final Buffer[] buffers = this.buffers;
+            final int buffersLength = buffers.length;
+
+            // The writer thread interrupts this thread to signal that it
+            // cannot handle more input because there has been an
+            // IOException during writing.
+            // We stop processing in this case.
+            int read;
+            long head = 0;
+            do {
+                // Wait until a buffer is available.
+                if (!awaitSpace(head))
+                    return;
+                final Buffer buffer = buffers[(int) (head % buffersLength)];
+
+                // Fill buffer until end of file or buffer.
+                // This should normally complete in one loop cycle, but
+                // we do not depend on this as it would be a violation
+                // of InputStream's contract.
+                try {
+                    final byte[] buf = buffer.buf;
+                    read = in.read(buf, 0, buf.length);
+                } catch (final Throwable ex) {
+                    exception = ex;
+                    read = -1;
+                }
+                buffer.read = read;
+
+                // Advance head and signal writer.
+                this.head = ++head;
+                final Thread writer = this.writer;
+                if (null != writer)
+                    LockSupport.unpark(writer);
+            } while (0 <= read);
+        }
+
+        /**
+         * Waits until the buffer at the given head position is available
+         * for reading.
+         *
+         * @return {@code false} if and only if the current thread has been
+         *         interrupted in order to cancel this task.
+         */
+        private boolean awaitSpace(final long head) {
+            final long tail = head - buffers.length;
+            for (int spins = SPINS; this.tail <= tail; ) {
+                if (0 < spins) {
+                    spins--;
+                    continue;
+                }
+                this.reader = Thread.currentThread();
+                if (this.tail <= tail)
+                    LockSupport.park(this);
+                this.reader = null;
+                if (Thread.interrupted())
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Waits until the buffer at the given tail position has been filled
+         * by the reader thread.
+         *
+         * @return {@code true} if and only if the current thread has been
+         *         interrupted while waiting.
+         */
+        boolean awaitData(final long tail) {
+            boolean interrupted = false;
+            for (int spins = SPINS; head <= tail; ) {
+                if (0 < spins) {
+                    spins--;
+                    continue;
+                }
+                this.writer = Thread.currentThread();
+                if (head <= tail)
+                    LockSupport.park(this);
+                this.writer = null;
+                interrupted |= Thread.interrupted();
+            }
+            return interrupted;
+        }
+
+        /** Advances the tail to the given position and signals the reader. */
+        void release(final long tail) {
+            this.tail = tail;
+            final Thread reader = this.reader;
+            if (null != reader)
+                LockSupport.unpark(reader);
+        }
+    } // ReaderTask
+
     /** A buffer for I/O. */
     private static final class Buffer {
         /**
@@ -330,7 +464,7 @@ public class Streams {
         }
 
         /** The byte buffer used for reading and writing. */
-        final byte[] buf = new byte[BUFFER_SIZE];
+        final byte[] buf = new byte[FIFO_BUFFER_SIZE];
 
         /**
          * The actual number of bytes read into the buffer.
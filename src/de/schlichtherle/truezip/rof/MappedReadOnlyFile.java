@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.rof;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+/**
+ * A {@link ReadOnlyFile} implementation which maps the file into memory.
+ * Reading from a mapped file does not require a system call, which makes
+ * this class well suited for the many small random reads which are typical
+ * for accessing the central directory and the entry headers of an archive
+ * file.
+ * <p>
+ * The file gets mapped in chunks of a configurable size, so files larger than
+ * two GB are supported, too.
+ * Each chunk gets mapped on its first access.
+ * When this read only file gets closed, all mappings get released
+ * immediately if the platform provides the means to do so.
+ * Otherwise, they get released by the garbage collector.
+ * <p>
+ * Note that truncating the file while it's mapped may cause reads to fail
+ * with an {@link InternalError} or even crash the JVM on some platforms.
+ * Use this class only for files which are not concurrently modified.
+ * <p>
+ * The factories in TrueZIP which create read only files for files in the
+ * platform file system use this class if the file length is equal to or
+ * greater than {@link #THRESHOLD}.
+ * <p>
+ * This class is <em>not</em> thread-safe.
+ *
+ * @author Christian Schlichtherle
+ */
+public class MappedReadOnlyFile extends AbstractReadOnlyFile {
+
+    /** The default size of a mapped chunk of the file, which is {@value}. */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The minimum file length for using this class instead of a
+     * {@link DefaultReadOnlyFile}.
+     * This gets read from the system property
+     * {@code de.schlichtherle.truezip.rof.MappedReadOnlyFile.threshold}
+     * and defaults to {@link Long#MAX_VALUE}, which effectively disables the
+     * use of this class.
+     */
+    public static final long THRESHOLD = Long.getLong(
+            MappedReadOnlyFile.class.getName() + ".threshold",
+            Long.MAX_VALUE);
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long length;
+    private final int chunkSize;
+    private MappedByteBuffer[] chunks;
+    private long pos;
+
+    /**
+     * Returns a new read only file for the given file.
+     * This is a {@code MappedReadOnlyFile} if the length of the file is equal
+     * to or greater than {@link #THRESHOLD} or a {@link DefaultReadOnlyFile}
+     * otherwise.
+     *
+     * @param  file the file to read.
+     * @return A new read only file for the given file.
+     * @throws FileNotFoundException if the file cannot get opened for reading.
+     * @throws IOException on any I/O error.
+     */
+    public static ReadOnlyFile newReadOnlyFile(final File file)
+    throws IOException {
+        return THRESHOLD <= file.length()
+                ? new MappedReadOnlyFile(file)
+                : new DefaultReadOnlyFile(file);
+    }
+
+    /**
+     * Constructs a new mapped read only file.
+     *
+     * @param  file the file to read.
+     * @throws FileNotFoundException if the file cannot get opened for reading.
+     * @throws IOException on any I/O error.
+     */
+    public MappedReadOnlyFile(File file) throws IOException {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs a new mapped read only file.
+     *
+     * @param  file the file to read.
+     * @param  chunkSize the size of a mapped chunk of the file in bytes.
+     * @throws FileNotFoundException if the file cannot get opened for reading.
+     * @throws IOException on any I/O error.
+     */
+    public MappedReadOnlyFile(final File file, final int chunkSize)
+    throws IOException {
+        if (0 >= chunkSize)
+            throw new IllegalArgumentException();
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            this.channel = raf.getChannel();
+            this.length = this.channel.size();
+        } catch (final IOException ex) {
+            raf.close();
+            throw ex;
+        }
+        this.raf = raf;
+        this.chunkSize = chunkSize;
+        this.chunks = new MappedByteBuffer[
+                (int) ((this.length + chunkSize - 1) / chunkSize)];
+    }
+
+    /**
+     * Asserts that this file is open.
+     *
+     * @throws IOException If the preconditions do not hold.
+     */
+    private void assertOpen() throws IOException {
+        if (null == chunks)
+            throw new IOException("File is closed!");
+    }
+
+    /** Returns the mapped chunk with the given index. */
+    private MappedByteBuffer chunk(final int index) throws IOException {
+        MappedByteBuffer chunk = chunks[index];
+        if (null == chunk) {
+            final long start = (long) index * chunkSize;
+            chunk = chunks[index] = channel.map(READ_ONLY, start,
+                    Math.min(chunkSize, length - start));
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the file channel of the mapped file.
+     *
+     * @return The file channel of the mapped file.
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public long length() throws IOException {
+        assertOpen();
+        return length;
+    }
+
+    @Override
+    public long getFilePointer() throws IOException {
+        assertOpen();
+        return pos;
+    }
+
+    @Override
+    public void seek(final long pos) throws IOException {
+        assertOpen();
+        if (pos < 0)
+            throw new IOException("File pointer must not be negative!");
+        this.pos = pos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        assertOpen();
+        final long pos = this.pos;
+        if (pos >= length)
+            return -1;
+        final int b = chunk((int) (pos / chunkSize))
+                .get((int) (pos % chunkSize)) & 0xff;
+        this.pos = pos + 1;
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] dst, final int offset, final int remaining)
+    throws IOException {
+        // Check no-op first for compatibility with RandomAccessFile.
+        if (remaining <= 0)
+            return 0;
+
+        // Check is open and not at EOF.
+        assertOpen();
+        long pos = this.pos;
+        final long available = length - pos;
+        if (available <= 0)
+            return -1;
+
+        // Check parameters.
+        if (0 > (offset | remaining | dst.length - offset - remaining))
+	    throw new IndexOutOfBoundsException();
+
+        // Copy chunk data.
+        final int total = (int) Math.min(remaining, available);
+        for (int copied = 0; copied < total; ) {
+            final ByteBuffer chunk = chunk((int) (pos / chunkSize));
+            final int chunkPos = (int) (pos % chunkSize);
+            final int n = Math.min(total - copied, chunk.limit() - chunkPos);
+            chunk.position(chunkPos);
+            chunk.get(dst, offset + copied, n);
+            copied += n;
+            pos += n;
+        }
+        this.pos = pos;
+        return total;
+    }
+
+    /**
+     * Closes this read only file and releases all mappings.
+     */
+    @Override
+    public void close() throws IOException {
+        final MappedByteBuffer[] chunks = this.chunks;
+        if (null == chunks)
+            return;
+        this.chunks = null;
+        for (int i = chunks.length; 0 <= --i; ) {
+            final MappedByteBuffer chunk = chunks[i];
+            if (null != chunk) {
+                chunks[i] = null;
+                Unmapper.SINGLETON.unmap(chunk);
+            }
+        }
+        raf.close();
+    }
+
+    /**
+     * Releases the mapping of a buffer immediately using the private APIs of
+     * the platform.
+     * If none of these APIs is available, the mapping gets released by the
+     * garbage collector.
+     */
+    private abstract static class Unmapper {
+        static final Unmapper SINGLETON = newUnmapper();
+
+        private static Unmapper newUnmapper() {
+            try {
+                // JSE 9 and later.
+                final Class<?> c = Class.forName("sun.misc.Unsafe");
+                final Method m = c.getMethod("invokeCleaner", ByteBuffer.class);
+                final Field f = c.getDeclaredField("theUnsafe");
+                f.setAccessible(true);
+                final Object unsafe = f.get(null);
+                return new Unmapper() {
+                    @Override
+                    void unmap0(ByteBuffer buffer) throws Exception {
+                        m.invoke(unsafe, buffer);
+                    }
+                };
+            } catch (final Exception notAvailable) {
+            }
+            try {
+                // Android.
+                final Method m = Class.forName("java.nio.NioUtils")
+                        .getMethod("freeDirectBuffer", ByteBuffer.class);
+                return new Unmapper() {
+                    @Override
+                    void unmap0(ByteBuffer buffer) throws Exception {
+                        m.invoke(null, buffer);
+                    }
+                };
+            } catch (final Exception notAvailable) {
+            }
+            // JSE 6 to 8.
+            return new Unmapper() {
+                @Override
+                void unmap0(final ByteBuffer buffer) throws Exception {
+                    final Method cm = buffer.getClass().getMethod("cleaner");
+                    cm.setAccessible(true);
+                    final Object cleaner = cm.invoke(buffer);
+                    if (null != cleaner)
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            };
+        }
+
+        abstract void unmap0(ByteBuffer buffer) throws Exception;
+
+        final void unmap(final ByteBuffer buffer) {
+            try {
+                unmap0(buffer);
+            } catch (final Exception ex) {
+                // Leave it to the garbage collector.
+            }
+        }
+    } // Unmapper
+}
@@ -11,12 +11,14 @@ import static de.schlichtherle.truezip.entry.Entry.Size.DATA;
 import static de.schlichtherle.truezip.entry.Entry.UNKNOWN;
 import de.schlichtherle.truezip.entry.MutableEntry;
 import de.schlichtherle.truezip.io.DecoratingOutputStream;
+import de.schlichtherle.truezip.io.FileChannelSink;
 import de.schlichtherle.truezip.io.InputException;
 import de.schlichtherle.truezip.io.SequentialIOException;
 import de.schlichtherle.truezip.io.SequentialIOExceptionBuilder;
 import de.schlichtherle.truezip.util.JointIterator;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -166,7 +168,8 @@ extends DecoratingOutputShop<E, OutputShop<E>> {
     }
 
     /** This entry output stream writes directly to this output shop. */
-    private final class EntryOutputStream extends DecoratingOutputStream {
+    private final class EntryOutputStream extends DecoratingOutputStream
+    implements FileChannelSink {
         boolean closed;
 
         EntryOutputStream(final OutputSocket<? extends E> output)
@@ -175,6 +178,14 @@ extends DecoratingOutputShop<E, OutputShop<E>> {
             busy = true;
         }
 
+        @Override
+        public long transferFrom(FileChannel src, long position, long count)
+        throws IOException {
+            return delegate instanceof FileChannelSink
+                    ? ((FileChannelSink) delegate).transferFrom(src, position, count)
+                    : -1;
+        }
+
         @Override
         public void close() throws IOException {
             if (!closed) {
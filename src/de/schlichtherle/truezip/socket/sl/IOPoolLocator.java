@@ -8,9 +8,18 @@ import de.schlichtherle.truezip.fs.file.TempFilePoolService;
 import de.schlichtherle.truezip.socket.IOPool;
 import de.schlichtherle.truezip.socket.IOPoolProvider;
 import de.schlichtherle.truezip.socket.spi.IOPoolService;
+import java.util.ServiceConfigurationError;
 
 /**
  * Locates an I/O buffer pool service.
+ * <p>
+ * The class name of the I/O pool service gets read from the system property
+ * {@code de.schlichtherle.truezip.socket.spi.IOPoolService}.
+ * The class must have a public no-argument constructor.
+ * If this property is not set, a {@link TempFilePoolService} gets used.
+ * E.g. setting this property to
+ * {@code de.schlichtherle.truezip.fs.file.MemoryPoolService} selects an I/O
+ * pool which keeps small buffers in memory.
  *
  * @see     IOPoolService
  * @author  Christian Schlichtherle
@@ -37,7 +46,19 @@ public final class IOPoolLocator implements IOPoolProvider {
         }
 
         private static IOPool<?> create() {
-            IOPoolService service = new TempFilePoolService();
+            final String name = System.getProperty(
+                    IOPoolService.class.getName());
+            final IOPoolService service;
+            if (null == name) {
+                service = new TempFilePoolService();
+            } else {
+                try {
+                    service = (IOPoolService) Class.forName(name)
+                            .getDeclaredConstructor().newInstance();
+                } catch (final Exception ex) {
+                    throw new ServiceConfigurationError(name, ex);
+                }
+            }
             final IOPool<?> pool = service.get();
             return pool;
         }
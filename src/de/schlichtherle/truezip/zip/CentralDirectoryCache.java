@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.zip;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process wide cache of parsed central directories of ZIP files.
+ * When a ZIP file gets opened again while its canonical path, length and
+ * last modification time are unchanged, then its entries get cloned from
+ * this cache instead of reading and parsing all Central File Headers again.
+ * This speeds up remounting large archive files which are mostly read.
+ * <p>
+ * Only ZIP files which are identified by a {@link File} are cached, i.e.
+ * archive files which are nested in other archive files are not.
+ * The cache is bounded by the total number of cached entries.
+ * If adding a central directory would exceed this bound, then the least
+ * recently used central directories get evicted.
+ * <p>
+ * Note that the cache relies on the length and the last modification time
+ * for detecting changes to a file, so a change which preserves both of them
+ * within the resolution of the file system's time stamps would go unnoticed.
+ * This is why the cache is disabled by default.
+ * The initial maximum number of cached entries gets read from the system
+ * property {@code de.schlichtherle.truezip.zip.CentralDirectoryCache.maxEntries}
+ * and defaults to {@value #DEFAULT_MAX_ENTRIES}, which disables the cache.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author  Christian Schlichtherle
+ */
+public final class CentralDirectoryCache {
+
+    /** The default maximum number of cached entries, which is {@value}. */
+    public static final int DEFAULT_MAX_ENTRIES = 0;
+
+    /** The cache which is used by the classes in this package. */
+    public static final CentralDirectoryCache SINGLETON
+            = new CentralDirectoryCache(Integer.getInteger(
+                CentralDirectoryCache.class.getName() + ".maxEntries",
+                DEFAULT_MAX_ENTRIES));
+
+    private final Map<Key, Directory> directories
+            = new LinkedHashMap<Key, Directory>(16, 0.75f, true);
+    private int maxEntries;
+    private int entries;
+    private long hits, misses, evictions;
+
+    private CentralDirectoryCache(final int maxEntries) {
+        setMaxEntries(maxEntries);
+    }
+
+    /**
+     * Returns the maximum total number of entries in all cached central
+     * directories.
+     *
+     * @return The maximum total number of entries in all cached central
+     *         directories.
+     */
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum total number of entries in all cached central
+     * directories.
+     * If the new value is less than the current number of cached entries,
+     * then the least recently used central directories get evicted
+     * immediately.
+     * Setting this to zero disables the cache.
+     *
+     * @param  maxEntries the maximum total number of entries in all cached
+     *         central directories.
+     * @throws IllegalArgumentException if {@code maxEntries} is negative.
+     */
+    public synchronized void setMaxEntries(final int maxEntries) {
+        if (maxEntries < 0)
+            throw new IllegalArgumentException();
+        this.maxEntries = maxEntries;
+        evict();
+    }
+
+    /** Returns the number of central directories which have been reused. */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** Returns the number of central directories which have been parsed. */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Returns the number of central directories which have been evicted. */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** Returns the total number of entries in all cached central directories. */
+    public synchronized int getEntries() {
+        return entries;
+    }
+
+    /** Returns the number of cached central directories. */
+    public synchronized int getDirectories() {
+        return directories.size();
+    }
+
+    /** Evicts all central directories from this cache. */
+    public synchronized void clear() {
+        directories.clear();
+        entries = 0;
+    }
+
+    /**
+     * Returns a key for the central directory of the given file or
+     * {@code null} if this cache is disabled or the file cannot get
+     * identified.
+     *
+     * @param  file the file.
+     * @param  length the length of the file as seen by the caller.
+     * @param  param the parameters for reading the ZIP file.
+     * @param  compact whether or not the central directory gets mounted in
+     *         compact form.
+     * @return A key for the central directory of the given file or
+     *         {@code null}.
+     */
+    Key key(final File file,
+            final long length,
+            final ZipFileParameters<?> param,
+            final boolean compact) {
+        if (0 >= getMaxEntries())
+            return null;
+        final String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (final IOException ex) {
+            return null;
+        }
+        final long time = file.lastModified();
+        if (0 == time || file.length() != length)
+            return null;
+        return new Key(path, length, time, param, compact);
+    }
+
+    /**
+     * Returns the central directory for the given key or {@code null} if it
+     * is not present in this cache.
+     */
+    synchronized Directory get(final Key key) {
+        final Directory dir = directories.get(key);
+        if (null != dir)
+            hits++;
+        else
+            misses++;
+        return dir;
+    }
+
+    /**
+     * Puts the given central directory for the given key into this cache.
+     * The file gets checked for changes again before, so that a file which
+     * has been modified while parsing its central directory doesn't get
+     * cached.
+     */
+    void put(final Key key, final Directory dir) {
+        if (!key.isValid())
+            return;
+        synchronized (this) {
+            final int size = dir.size();
+            if (maxEntries < size)
+                return;
+            final Directory old = directories.put(key, dir);
+            if (null != old)
+                entries -= old.size();
+            entries += size;
+            evict();
+        }
+    }
+
+    private void evict() {
+        assert Thread.holdsLock(this);
+        final Iterator<Directory> i = directories.values().iterator();
+        while (maxEntries < entries && i.hasNext()) {
+            entries -= i.next().size();
+            i.remove();
+            evictions++;
+        }
+    }
+
+    /** Identifies the state of a file and the parameters for parsing it. */
+    static final class Key {
+        private final String path;
+        private final long length, time;
+        private final Class<?> factory;
+        private final Charset charset;
+        private final boolean preambled, postambled, compact;
+
+        Key(final String path,
+            final long length,
+            final long time,
+            final ZipFileParameters<?> param,
+            final boolean compact) {
+            this.path = path;
+            this.length = length;
+            this.time = time;
+            this.factory = param.getClass();
+            this.charset = param.getCharset();
+            this.preambled = param.getPreambled();
+            this.postambled = param.getPostambled();
+            this.compact = compact;
+        }
+
+        boolean isValid() {
+            final File file = new File(path);
+            return file.lastModified() == time && file.length() == length;
+        }
+
+        @Override
+        public boolean equals(final Object that) {
+            if (this == that)
+                return true;
+            if (!(that instanceof Key))
+                return false;
+            final Key key = (Key) that;
+            return path.equals(key.path)
+                    && length == key.length
+                    && time == key.time
+                    && factory == key.factory
+                    && charset.equals(key.charset)
+                    && preambled == key.preambled
+                    && postambled == key.postambled
+                    && compact == key.compact;
+        }
+
+        @Override
+        public int hashCode() {
+            int c = 17;
+            c = 31 * c + path.hashCode();
+            c = 31 * c + (int) (length ^ (length >>> 32));
+            c = 31 * c + (int) (time ^ (time >>> 32));
+            c = 31 * c + factory.hashCode();
+            c = 31 * c + charset.hashCode();
+            c = 31 * c + (preambled ? 1 : 0);
+            c = 31 * c + (postambled ? 1 : 0);
+            c = 31 * c + (compact ? 1 : 0);
+            return c;
+        }
+    } // Key
+
+    /**
+     * The immutable state of a {@link RawZipFile} after parsing its central
+     * directory.
+     * The entries are either prototypes which must get cloned before use
+     * or a compact table which can get shared.
+     */
+    static final class Directory {
+        final long preamble, postamble;
+        final Charset charset;
+        final byte[] comment;
+        final PositionMapper mapper;
+        final ZipEntry[] entries;
+        final CompactCentralDirectory table;
+
+        Directory(  final long preamble,
+                    final long postamble,
+                    final Charset charset,
+                    final byte[] comment,
+                    final PositionMapper mapper,
+                    final ZipEntry[] entries,
+                    final CompactCentralDirectory table) {
+            assert null == entries ^ null == table;
+            this.preamble = preamble;
+            this.postamble = postamble;
+            this.charset = charset;
+            this.comment = comment;
+            this.mapper = mapper;
+            this.entries = entries;
+            this.table = table;
+        }
+
+        int size() {
+            return null != entries ? entries.length : table.size();
+        }
+    } // Directory
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.zip;
+
+import static de.schlichtherle.truezip.zip.Constants.*;
+import static de.schlichtherle.truezip.zip.LittleEndian.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.ZipException;
+
+/**
+ * A packed table of the Central File Headers of a ZIP file with an open
+ * addressing hash index for their entry names.
+ * The records get stored verbatim in a single byte array, so the table
+ * requires only a few bytes per entry beyond the size of the central
+ * directory in the ZIP file.
+ * <p>
+ * If a name occurs more than once, then the last record for this name
+ * replaces the previous record at its position, so the table mimics the
+ * behavior of a {@link java.util.LinkedHashMap}.
+ * <p>
+ * A table is mutable while it gets built and immutable once it has been
+ * {@link #trim() trimmed}, so it may then get shared between threads.
+ *
+ * @author  Christian Schlichtherle
+ */
+final class CompactCentralDirectory {
+
+    /** The character set for the records before {@link #utf8}. */
+    private final Charset charset;
+
+    /** The offset of the first record which uses UTF-8. */
+    private int utf8 = Integer.MAX_VALUE;
+
+    /** The packed records. */
+    private byte[] data;
+
+    /** The number of bytes used in {@link #data}. */
+    private int length;
+
+    /** The offsets of the records in {@link #data}. */
+    private int[] offsets;
+
+    /** The hash codes of the entry names of the records. */
+    private int[] hashes;
+
+    /** The number of records. */
+    private int size;
+
+    /**
+     * The hash index which maps slots to record indices plus one.
+     * Zero indicates an empty slot.
+     */
+    private int[] index;
+
+    CompactCentralDirectory(final Charset charset, final int numEntries) {
+        assert null != charset;
+        this.charset = charset;
+        final int capacity = Math.max(16, numEntries);
+        this.data = new byte[capacity * (CFH_MIN_LEN + 32)];
+        this.offsets = new int[capacity];
+        this.hashes = new int[capacity];
+        this.index = new int[tableSize(capacity)];
+    }
+
+    private static int tableSize(final int capacity) {
+        return Integer.highestOneBit(Math.max(16, capacity) * 2 - 1) << 1;
+    }
+
+    private static int slot(final int hash, final int mask) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /** Returns the number of records in this table. */
+    int size() {
+        return size;
+    }
+
+    /** Returns the packed records. */
+    byte[] data() {
+        return data;
+    }
+
+    /** Returns the offset of the record with the given index. */
+    int offset(final int i) {
+        return offsets[i];
+    }
+
+    /**
+     * Returns the character set for decoding the record with the given
+     * index.
+     */
+    Charset charset(final int i) {
+        return utf8 <= offsets[i] ? UTF8 : charset;
+    }
+
+    /** Returns the entry name of the record with the given index. */
+    String name(final int i) {
+        final int off = offsets[i];
+        return new String(data, off + CFH_MIN_LEN, readUShort(data, off + 28),
+                utf8 <= off ? UTF8 : charset);
+    }
+
+    /**
+     * Returns the index of the record with the given entry name or
+     * {@code -1} if no such record exists.
+     */
+    int indexOf(final String name) {
+        final int hash = name.hashCode();
+        final int[] index = this.index;
+        final int mask = index.length - 1;
+        for (int s = slot(hash, mask), i; 0 != (i = index[s]); s = (s + 1) & mask)
+            if (hash == hashes[--i] && name.equals(name(i)))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Adds the given record to this table.
+     *
+     * @param  buf the buffer with the record.
+     * @param  off the offset of the record in the buffer.
+     * @param  len the length of the record.
+     * @param  name the decoded entry name of the record.
+     * @param  charset the character set used for decoding the entry name.
+     * @throws ZipException if this table is full.
+     */
+    void add(   final byte[] buf,
+                final int off,
+                final int len,
+                final String name,
+                final Charset charset)
+    throws ZipException {
+        final int start = this.length;
+        final int end = start + len;
+        if (end < 0)
+            throw new ZipException(
+                    "Central Directory too large for compact mode!");
+        if (data.length < end)
+            data = Arrays.copyOf(data,
+                    (int) Math.min(Integer.MAX_VALUE, Math.max(end, data.length * 3L / 2)));
+        System.arraycopy(buf, off, data, start, len);
+        this.length = end;
+        if (!this.charset.equals(charset) && Integer.MAX_VALUE == utf8)
+            utf8 = start;
+
+        final int i = indexOf(name);
+        if (0 <= i) {
+            offsets[i] = start; // replace
+            return;
+        }
+        if (offsets.length <= size) {
+            final int capacity = offsets.length * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        offsets[size] = start;
+        hashes[size] = name.hashCode();
+        if (index.length < 2 * ++size)
+            rehash(tableSize(size));
+        else
+            insert(index, size - 1);
+    }
+
+    private void insert(final int[] index, final int i) {
+        final int mask = index.length - 1;
+        int s = slot(hashes[i], mask);
+        while (0 != index[s])
+            s = (s + 1) & mask;
+        index[s] = i + 1;
+    }
+
+    private void rehash(final int capacity) {
+        final int[] index = new int[capacity];
+        for (int i = 0; i < size; i++)
+            insert(index, i);
+        this.index = index;
+    }
+
+    /**
+     * Releases any unused capacity.
+     * This table must not get modified afterwards.
+     */
+    void trim() {
+        if (data.length != length)
+            data = Arrays.copyOf(data, length);
+        if (offsets.length != size) {
+            offsets = Arrays.copyOf(offsets, size);
+            hashes = Arrays.copyOf(hashes, size);
+        }
+    }
+}
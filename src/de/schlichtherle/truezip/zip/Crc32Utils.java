@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.zip;
+
+/**
+ * Static utility methods for CRC-32 checksums.
+ *
+ * @author  Christian Schlichtherle
+ */
+final class Crc32Utils {
+
+    /** The reversed CRC-32 polynomial. */
+    private static final int POLYNOMIAL = 0xedb88320;
+
+    /** You cannot instantiate this class. */
+    private Crc32Utils() {
+    }
+
+    /**
+     * Combines two CRC-32 checksums of consecutive byte sequences into the
+     * CRC-32 checksum of their concatenation.
+     * This is a port of the function {@code crc32_combine} in zlib.
+     *
+     * @param  crc1 the CRC-32 checksum of the first byte sequence.
+     * @param  crc2 the CRC-32 checksum of the second byte sequence.
+     * @param  len2 the length of the second byte sequence.
+     * @return The CRC-32 checksum of the concatenated byte sequences.
+     */
+    static long combine(final long crc1, final long crc2, long len2) {
+        if (len2 <= 0)
+            return crc1;
+        final int[] even = new int[32]; // even-power-of-two zeros operator
+        final int[] odd = new int[32]; // odd-power-of-two zeros operator
+
+        // Put operator for one zero bit in odd.
+        odd[0] = POLYNOMIAL;
+        for (int n = 1, row = 1; n < 32; n++, row <<= 1)
+            odd[n] = row;
+        square(even, odd); // put operator for two zero bits in even
+        square(odd, even); // put operator for four zero bits in odd
+
+        // Apply len2 zeros to crc1 (first square will put the operator for
+        // one zero byte, eight zero bits, in even).
+        int crc = (int) crc1;
+        do {
+            square(even, odd);
+            if (0 != (len2 & 1))
+                crc = times(even, crc);
+            len2 >>>= 1;
+            if (0 == len2)
+                break;
+            square(odd, even);
+            if (0 != (len2 & 1))
+                crc = times(odd, crc);
+            len2 >>>= 1;
+        } while (0 != len2);
+        return (crc ^ (int) crc2) & 0xffffffffL;
+    }
+
+    private static int times(final int[] mat, int vec) {
+        int sum = 0;
+        for (int i = 0; 0 != vec; vec >>>= 1, i++)
+            if (0 != (vec & 1))
+                sum ^= mat[i];
+        return sum;
+    }
+
+    private static void square(final int[] square, final int[] mat) {
+        for (int n = 0; n < 32; n++)
+            square[n] = times(mat, mat[n]);
+    }
+}
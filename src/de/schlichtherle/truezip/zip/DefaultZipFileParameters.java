@@ -14,17 +14,35 @@ import java.nio.charset.Charset;
  */
 final class DefaultZipFileParameters
 extends DefaultZipCharsetParameters
-implements ZipFileParameters<ZipEntry> {
+implements ZipFileParameters<ZipEntry>, ZipCentralDirectoryParameters {
 
-    private final boolean preambled, postambled;
+    /**
+     * The number of threads for parsing the central directory.
+     * This gets read from the system property
+     * {@code de.schlichtherle.truezip.zip.ZipFile.centralDirectoryThreads}
+     * and defaults to one.
+     */
+    private static final int CENTRAL_DIRECTORY_THREADS = Integer.getInteger(
+            ZipFile.class.getName() + ".centralDirectoryThreads", 1);
+
+    private final boolean preambled, postambled, compact;
 
     DefaultZipFileParameters(
             final Charset charset,
             final boolean preambled,
             final boolean postambled) {
+        this(charset, preambled, postambled, false);
+    }
+
+    DefaultZipFileParameters(
+            final Charset charset,
+            final boolean preambled,
+            final boolean postambled,
+            final boolean compact) {
         super(charset);
         this.preambled = preambled;
         this.postambled = postambled;
+        this.compact = compact;
     }
 
     @Override
@@ -37,6 +55,16 @@ implements ZipFileParameters<ZipEntry> {
         return postambled;
     }
 
+    @Override
+    public boolean getCompactCentralDirectory() {
+        return compact;
+    }
+
+    @Override
+    public int getCentralDirectoryThreads() {
+        return CENTRAL_DIRECTORY_THREADS;
+    }
+
     @Override
     public ZipEntry newEntry(String name) {
         return new ZipEntry(name);
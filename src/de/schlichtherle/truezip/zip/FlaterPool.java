@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.zip;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A pool of {@link Deflater} and {@link Inflater} objects which get reset
+ * and reused for subsequent entries instead of being ended.
+ * Each of these objects holds a significant amount of native memory until it
+ * gets ended, so reusing them avoids the churn of allocating and freeing this
+ * memory for each entry.
+ * <p>
+ * Deflaters are pooled by their compression level and their
+ * {@code nowrap} property, inflaters by their {@code nowrap} property.
+ * The number of idle deflaters and the number of idle inflaters are each
+ * bounded by the {@link #getMaxIdle() maximum idle count}.
+ * If a released object would exceed this bound, then it gets ended instead.
+ * The hit and miss counters of this pool may get used to tune this bound.
+ * <p>
+ * The initial maximum idle count gets read from the system property
+ * {@code de.schlichtherle.truezip.zip.FlaterPool.maxIdle} and defaults to
+ * {@value #DEFAULT_MAX_IDLE}.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author  Christian Schlichtherle
+ */
+public final class FlaterPool {
+
+    /** The default maximum idle count, which is {@value}. */
+    public static final int DEFAULT_MAX_IDLE = 16;
+
+    /** The pool which is used by the classes in this package. */
+    public static final FlaterPool SINGLETON = new FlaterPool(
+            Integer.getInteger(FlaterPool.class.getName() + ".maxIdle",
+                DEFAULT_MAX_IDLE));
+
+    /** The number of compression levels, including the default level. */
+    private static final int LEVELS
+            = Deflater.BEST_COMPRESSION - Deflater.DEFAULT_COMPRESSION + 1;
+
+    private final Queue<Jdk6Deflater>[] deflaters;
+    private final Queue<Jdk6Inflater>[] inflaters;
+    private final AtomicInteger idleDeflaters = new AtomicInteger();
+    private final AtomicInteger idleInflaters = new AtomicInteger();
+    private final AtomicLong deflaterHits = new AtomicLong();
+    private final AtomicLong deflaterMisses = new AtomicLong();
+    private final AtomicLong inflaterHits = new AtomicLong();
+    private final AtomicLong inflaterMisses = new AtomicLong();
+    private volatile int maxIdle;
+
+    private FlaterPool(final int maxIdle) {
+        setMaxIdle(maxIdle);
+        this.deflaters = newQueues(2 * LEVELS);
+        this.inflaters = newQueues(2);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Queue<E>[] newQueues(final int length) {
+        final Queue<E>[] queues = (Queue<E>[]) new Queue<?>[length];
+        for (int i = length; 0 <= --i; )
+            queues[i] = new ConcurrentLinkedQueue<E>();
+        return queues;
+    }
+
+    private static int key(final int level, final boolean nowrap) {
+        return 2 * (level - Deflater.DEFAULT_COMPRESSION) + (nowrap ? 1 : 0);
+    }
+
+    private static int key(final boolean nowrap) {
+        return nowrap ? 1 : 0;
+    }
+
+    /**
+     * Returns the maximum number of idle deflaters and the maximum number of
+     * idle inflaters in this pool.
+     *
+     * @return The maximum number of idle deflaters and the maximum number of
+     *         idle inflaters in this pool.
+     */
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Sets the maximum number of idle deflaters and the maximum number of
+     * idle inflaters in this pool.
+     * If the new value is less than the current number of idle objects, then
+     * any released objects get ended until the number of idle objects has
+     * dropped below the new value.
+     * Setting this to zero effectively disables pooling.
+     *
+     * @param  maxIdle the maximum number of idle deflaters and the maximum
+     *         number of idle inflaters in this pool.
+     * @throws IllegalArgumentException if {@code maxIdle} is negative.
+     */
+    public void setMaxIdle(final int maxIdle) {
+        if (maxIdle < 0)
+            throw new IllegalArgumentException();
+        this.maxIdle = maxIdle;
+    }
+
+    /** Returns the number of deflaters which have been reused. */
+    public long getDeflaterHits() {
+        return deflaterHits.get();
+    }
+
+    /** Returns the number of deflaters which have been newly created. */
+    public long getDeflaterMisses() {
+        return deflaterMisses.get();
+    }
+
+    /** Returns the number of inflaters which have been reused. */
+    public long getInflaterHits() {
+        return inflaterHits.get();
+    }
+
+    /** Returns the number of inflaters which have been newly created. */
+    public long getInflaterMisses() {
+        return inflaterMisses.get();
+    }
+
+    /** Returns the number of idle deflaters in this pool. */
+    public int getIdleDeflaters() {
+        return idleDeflaters.get();
+    }
+
+    /** Returns the number of idle inflaters in this pool. */
+    public int getIdleInflaters() {
+        return idleInflaters.get();
+    }
+
+    /**
+     * Allocates a deflater with the given properties from this pool.
+     *
+     * @param  level the compression level.
+     * @param  nowrap whether or not to use the GZIP compatible format.
+     * @return A deflater with the given properties.
+     */
+    Deflater allocateDeflater(final int level, final boolean nowrap) {
+        final int key = key(level, nowrap);
+        final Jdk6Deflater def = deflaters[key].poll();
+        if (null != def) {
+            idleDeflaters.decrementAndGet();
+            deflaterHits.incrementAndGet();
+            return def;
+        }
+        deflaterMisses.incrementAndGet();
+        return new Jdk6Deflater(level, nowrap, key);
+    }
+
+    /**
+     * Releases the given deflater to this pool.
+     * The deflater must not get used by the caller anymore.
+     *
+     * @param def the deflater to release.
+     */
+    void release(final Deflater def) {
+        if (def instanceof Jdk6Deflater
+                && idleDeflaters.incrementAndGet() <= maxIdle) {
+            final Jdk6Deflater jdef = (Jdk6Deflater) def;
+            jdef.reset();
+            deflaters[jdef.key].add(jdef);
+        } else {
+            if (def instanceof Jdk6Deflater)
+                idleDeflaters.decrementAndGet();
+            def.end();
+        }
+    }
+
+    /**
+     * Allocates an inflater with the given property from this pool.
+     *
+     * @param  nowrap whether or not to use the GZIP compatible format.
+     * @return An inflater with the given property.
+     */
+    Inflater allocateInflater(final boolean nowrap) {
+        final Jdk6Inflater inf = inflaters[key(nowrap)].poll();
+        if (null != inf) {
+            idleInflaters.decrementAndGet();
+            inflaterHits.incrementAndGet();
+            return inf;
+        }
+        inflaterMisses.incrementAndGet();
+        return new Jdk6Inflater(nowrap);
+    }
+
+    /**
+     * Releases the given inflater to this pool.
+     * The inflater must not get used by the caller anymore.
+     *
+     * @param inf the inflater to release.
+     */
+    void release(final Inflater inf) {
+        if (inf instanceof Jdk6Inflater
+                && idleInflaters.incrementAndGet() <= maxIdle) {
+            final Jdk6Inflater jinf = (Jdk6Inflater) inf;
+            jinf.reset();
+            inflaters[key(jinf.nowrap)].add(jinf);
+        } else {
+            if (inf instanceof Jdk6Inflater)
+                idleInflaters.decrementAndGet();
+            inf.end();
+        }
+    }
+}
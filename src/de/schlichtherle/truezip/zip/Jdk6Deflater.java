@@ -15,8 +15,12 @@ import java.util.zip.Deflater;
 final class Jdk6Deflater extends Deflater {
     private long read = 0, written = 0;
 
-    Jdk6Deflater(int level, boolean nowrap) {
+    /** The key for pooling this deflater in a {@link FlaterPool}. */
+    final int key;
+
+    Jdk6Deflater(int level, boolean nowrap, int key) {
         super(level, nowrap);
+        this.key = key;
     }
 
     @Override
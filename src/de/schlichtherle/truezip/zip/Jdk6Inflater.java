@@ -16,8 +16,12 @@ import java.util.zip.Inflater;
 final class Jdk6Inflater extends Inflater {
     private long read = 0, written = 0;
 
+    /** The property for pooling this inflater in a {@link FlaterPool}. */
+    final boolean nowrap;
+
     Jdk6Inflater(boolean nowrap) {
         super(nowrap);
+        this.nowrap = nowrap;
     }
 
     @Override
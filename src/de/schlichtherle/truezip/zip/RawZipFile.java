@@ -4,12 +4,16 @@
  */
 package de.schlichtherle.truezip.zip;
 
+import de.schlichtherle.truezip.io.FileChannelSink;
+import de.schlichtherle.truezip.io.FileChannelSource;
 import de.schlichtherle.truezip.rof.BufferedReadOnlyFile;
 import de.schlichtherle.truezip.rof.IntervalReadOnlyFile;
+import de.schlichtherle.truezip.rof.MappedReadOnlyFile;
 import de.schlichtherle.truezip.rof.ReadOnlyFile;
 import de.schlichtherle.truezip.rof.ReadOnlyFileInputStream;
 import static de.schlichtherle.truezip.util.HashMaps.initialCapacity;
 import de.schlichtherle.truezip.util.Pool;
+import de.schlichtherle.truezip.util.ThreadGroups;
 import static de.schlichtherle.truezip.zip.Constants.*;
 import static de.schlichtherle.truezip.zip.ExtraField.WINZIP_AES_ID;
 import static de.schlichtherle.truezip.zip.LittleEndian.*;
@@ -18,13 +22,29 @@ import static de.schlichtherle.truezip.zip.WinZipAesUtils.overhead;
 import static de.schlichtherle.truezip.zip.ZipEntry.*;
 import static de.schlichtherle.truezip.zip.ZipParametersUtils.parameters;
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
 import java.util.zip.Inflater;
@@ -56,6 +76,9 @@ import libtruezip.compress.bzip2.BZip2CompressorInputStream;
 public abstract class RawZipFile<E extends ZipEntry>
 implements Iterable<E>, Closeable {
 
+    /** The minimum number of records for parsing on another thread. */
+    private static final int MIN_CHUNK_SIZE = 4 * 1024;
+
     private static final int LFH_FILE_NAME_LENGTH_OFF =
             /* Local File Header signature     */ 4 +
             /* Version Needed To Extract       */ 2 +
@@ -119,12 +142,36 @@ implements Iterable<E>, Closeable {
             ReadOnlyFile zip,
             ZipFileParameters<E> param)
     throws IOException {
-        this(new SingleReadOnlyFilePool(zip), param);
+        this(new SingleReadOnlyFilePool(zip), param, null);
+    }
+
+    /**
+     * Reads the given {@code zip} file in order to provide random access
+     * to its entries.
+     * If {@code file} is not {@code null}, then the central directory gets
+     * looked up in and added to the {@link CentralDirectoryCache}.
+     *
+     * @param  zip the ZIP file to be read.
+     * @param  file the nullable file which provides the contents of
+     *         {@code zip} in the platform file system.
+     * @param  param the parameters for reading the ZIP file.
+     * @throws ZipException if the file is not compatible to the ZIP
+     *         File Format Specification.
+     * @throws IOException on any other I/O related issue.
+     * @see    #recoverLostEntries()
+     */
+    protected RawZipFile(
+            ReadOnlyFile zip,
+            File file,
+            ZipFileParameters<E> param)
+    throws IOException {
+        this(new SingleReadOnlyFilePool(zip), param, file);
     }
 
     RawZipFile(
             final Pool<ReadOnlyFile, IOException> source,
-            final ZipFileParameters<E> param)
+            final ZipFileParameters<E> param,
+            final File file)
     throws IOException {
         if (null == param)
             throw new NullPointerException();
@@ -134,18 +181,37 @@ implements Iterable<E>, Closeable {
             this.length = rof.length();
             this.param = param;
             this.charset = param.getCharset();
-            final ReadOnlyFile
-                    brof = new SafeBufferedReadOnlyFile(rof, this.length);
-            if (!param.getPreambled())
-                checkZipFileSignature(brof);
-            final int numEntries = findCentralDirectory(brof, param.getPostambled());
-            mountCentralDirectory(brof, numEntries);
-            if (this.preamble + this.postamble >= this.length) {
-                assert 0 == numEntries;
-                if (param.getPreambled()) // otherwise already checked
+            final ZipCentralDirectoryParameters
+                    cdParam = centralDirectoryParameters(param);
+            final boolean compact = null != cdParam
+                    && cdParam.getCompactCentralDirectory();
+            final int threads = null == cdParam || compact
+                    ? 1
+                    : cdParam.getCentralDirectoryThreads();
+            final CentralDirectoryCache cache = CentralDirectoryCache.SINGLETON;
+            final CentralDirectoryCache.Key key = null == file
+                    ? null
+                    : cache.key(file, this.length, param, compact);
+            final CentralDirectoryCache.Directory
+                    dir = null == key ? null : cache.get(key);
+            if (null != dir) {
+                restoreCentralDirectory(dir);
+            } else {
+                final ReadOnlyFile
+                        brof = new SafeBufferedReadOnlyFile(rof, this.length);
+                if (!param.getPreambled())
                     checkZipFileSignature(brof);
+                final int numEntries = findCentralDirectory(brof, param.getPostambled());
+                mountCentralDirectory(brof, numEntries, compact, threads);
+                if (this.preamble + this.postamble >= this.length) {
+                    assert 0 == numEntries;
+                    if (param.getPreambled()) // otherwise already checked
+                        checkZipFileSignature(brof);
+                }
+                // Do NOT close brof - would close rof as well!
+                if (null != key)
+                    cache.put(key, saveCentralDirectory());
             }
-            // Do NOT close brof - would close rof as well!
         } catch (IOException ex) {
             source.release(rof);
             throw ex;
@@ -339,7 +405,9 @@ implements Iterable<E>, Closeable {
 
     /**
      * Reads the central directory from the given read only file file and
-     * populates the internal tables with ZipEntry instances.
+     * populates the internal tables with ZipEntry instances or, if
+     * {@code compact} is {@code true}, with a
+     * {@link CompactCentralDirectory}.
      * <p>
      * The ZipEntrys will know all data that can be obtained from
      * the central directory alone, but not the data that requires the
@@ -360,11 +428,23 @@ implements Iterable<E>, Closeable {
      *         Format Specification.
      * @throws IOException On any other I/O related issue.
      */
-    private void mountCentralDirectory(final ReadOnlyFile rof, int numEntries)
+    private void mountCentralDirectory(
+            final ReadOnlyFile rof,
+            int numEntries,
+            final boolean compact,
+            final int threads)
     throws IOException {
-        final Map<String, E> entries = new LinkedHashMap<String, E>(
-                Math.max(initialCapacity(numEntries), 16));
-        final byte[] cfh = new byte[CFH_MIN_LEN];
+        final CompactCentralDirectory table = compact
+                ? new CompactCentralDirectory(this.charset, numEntries)
+                : null;
+        final RecordBuffer records = !compact && 1 < threads
+                ? new RecordBuffer(numEntries)
+                : null;
+        final Map<String, E> entries = null != table
+                ? null
+                : new LinkedHashMap<String, E>(
+                    Math.max(initialCapacity(numEntries), 16));
+        byte[] cfh = new byte[CFH_MIN_LEN + 256];
         for (; ; numEntries--) {
             rof.readFully(cfh, 0, 4);
             // central file header signature   4 bytes  (0x02014b50)
@@ -373,89 +453,41 @@ implements Iterable<E>, Closeable {
             rof.readFully(cfh, 4, CFH_MIN_LEN - 4);
             final int gpbf = readUShort(cfh, 8);
             final int nameLen = readUShort(cfh, 28);
-            final byte[] name = new byte[nameLen];
-            rof.readFully(name);
+            final int len = CFH_MIN_LEN
+                    + nameLen
+                    + readUShort(cfh, 30)  // extra field length
+                    + readUShort(cfh, 32); // file comment length
+            if (cfh.length < len)
+                cfh = Arrays.copyOf(cfh, Math.max(len, 2 * cfh.length));
+            rof.readFully(cfh, CFH_MIN_LEN, len - CFH_MIN_LEN);
             // See appendix D of PKWARE's ZIP File Format Specification.
             final boolean utf8 = 0 != (gpbf & GPBF_UTF8);
             if (utf8)
                 this.charset = UTF8;
-            final E entry = this.param.newEntry(decode(name));
-            try {
-                int off = 0;
-                // central file header signature   4 bytes  (0x02014b50)
-                off += 4;
-                // version made by                 2 bytes
-                entry.setRawPlatform(readUShort(cfh, off) >> 8);
-                off += 2;
-                // version needed to extract       2 bytes
-                off += 2;
-                // general purpose bit flag        2 bytes
-                entry.setGeneralPurposeBitFlags(gpbf);
-                off += 2; // General Purpose Bit Flags
-                // compression method              2 bytes
-                entry.setRawMethod(readUShort(cfh, off));
-                off += 2;
-                // last mod file time              2 bytes
-                // last mod file date              2 bytes
-                entry.setRawTime(readUInt(cfh, off));
-                off += 4;
-                // crc-32                          4 bytes
-                entry.setRawCrc(readUInt(cfh, off));
-                off += 4;
-                // compressed size                 4 bytes
-                entry.setRawCompressedSize(readUInt(cfh, off));
-                off += 4;
-                // uncompressed size               4 bytes
-                entry.setRawSize(readUInt(cfh, off));
-                off += 4;
-                // file name length                2 bytes
-                off += 2;
-                // extra field length              2 bytes
-                final int extraLen = readUShort(cfh, off);
-                off += 2;
-                // file comment length             2 bytes
-                final int commentLen = readUShort(cfh, off);
-                off += 2;
-                // disk number start               2 bytes
-                off += 2;
-                // internal file attributes        2 bytes
-                //entry.setEncodedInternalAttributes(readUShort(cfh, off));
-                off += 2;
-                // external file attributes        4 bytes
-                entry.setRawExternalAttributes(readUInt(cfh, off));
-                off += 4;
-                // relative offset of local header 4 bytes
-                long lfhOff = readUInt(cfh, off);
-                entry.setRawOffset(lfhOff); // must be unmapped!
-                //off += 4;
-                // extra field (variable size)
-                if (0 < extraLen) {
-                    final byte[] extra = new byte[extraLen];
-                    rof.readFully(extra);
-                    entry.setRawExtraFields(extra);
-                }
-                // file comment (variable size)
-                if (0 < commentLen) {
-                    final byte[] comment = new byte[commentLen];
-                    rof.readFully(comment);
-                    entry.setRawComment(decode(comment));
-                }
-                // Re-read virtual offset after ZIP64 Extended Information
-                // Extra Field may have been parsed, map it to the real
-                // offset and conditionally update the preamble size from it.
-                lfhOff = this.mapper.map(entry.getOffset());
-                if (lfhOff < this.preamble)
-                    this.preamble = lfhOff;
-            } catch (IllegalArgumentException cause) {
-                throw (ZipException) new ZipException(entry.getName()
-                        + " (invalid meta data)").initCause(cause);
+            long lfhOff;
+            if (null != records) {
+                records.add(cfh, len, this.charset);
+                continue; // parse later
+            } else if (null != table) {
+                final String name = decode(cfh, CFH_MIN_LEN, nameLen);
+                table.add(cfh, 0, len, name, this.charset);
+                lfhOff = readUInt(cfh, 42);
+                if (UInt.MAX_VALUE <= lfhOff) // ZIP64
+                    lfhOff = newEntry(cfh, 0, this.charset).getOffset();
+            } else {
+                final E entry = newEntry(cfh, 0, this.charset);
+                lfhOff = entry.getOffset();
+                // Map the entry using the name that has been determined
+                // by the ZipEntryFactory.
+                // Note that this name may differ from what has been found
+                // in the ZIP file!
+                entries.put(entry.getName(), entry);
             }
-
-            // Map the entry using the name that has been determined
-            // by the ZipEntryFactory.
-            // Note that this name may differ from what has been found
-            // in the ZIP file!
-            entries.put(entry.getName(), entry);
+            // Map the virtual offset to the real offset and conditionally
+            // update the preamble size from it.
+            lfhOff = this.mapper.map(lfhOff);
+            if (lfhOff < this.preamble)
+                this.preamble = lfhOff;
         }
 
         // Check if the number of entries found matches the number of entries
@@ -475,7 +507,244 @@ implements Iterable<E>, Closeable {
                     (numEntries > 0 ? " more" : " less") +
                     " entries in the Central Directory!");
 
+        // Parse the buffered records in parallel.
+        if (null != records) {
+            for (final E entry : newEntries(records, threads)) {
+                entries.put(entry.getName(), entry);
+                final long lfhOff = this.mapper.map(entry.getOffset());
+                if (lfhOff < this.preamble)
+                    this.preamble = lfhOff;
+            }
+        }
+
         // Commit map of entries.
+        if (null != table) {
+            table.trim();
+            this.entries = new CompactEntries(table);
+        } else {
+            this.entries = entries;
+        }
+    }
+
+    private static ZipCentralDirectoryParameters centralDirectoryParameters(
+            final ZipParameters param) {
+        try {
+            return parameters(ZipCentralDirectoryParameters.class, param);
+        } catch (final ZipParametersException notAvailable) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the entries for the given buffered records in chunks on up to
+     * the given number of threads.
+     * The current thread parses the last chunk.
+     *
+     * @param  records the buffered Central File Header records.
+     * @param  threads the maximum number of threads.
+     * @return The list of entries in the order of the records.
+     * @throws ZipException If the meta data of any entry is invalid.
+     * @throws IOException On any other I/O related issue.
+     */
+    private List<E> newEntries(final RecordBuffer records, final int threads)
+    throws IOException {
+        final int size = records.size;
+        final List<E> entries = new ArrayList<E>(
+                Collections.<E>nCopies(size, null));
+        final int chunks = Math.min(threads,
+                (size + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE);
+        final class Chunk implements Callable<Void> {
+            final int start, end;
+
+            Chunk(final int start, final int end) {
+                this.start = start;
+                this.end = end;
+            }
+
+            @Override
+            public Void call() throws ZipException {
+                for (int i = start; i < end; i++)
+                    entries.set(i, newEntry(records.data,
+                            records.offsets[i], records.charset(i)));
+                return null;
+            }
+        } // Chunk
+        if (1 >= chunks) {
+            new Chunk(0, size).call();
+            return entries;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                chunks - 1, new ParserThreadFactory());
+        try {
+            final List<Future<Void>> results
+                    = new ArrayList<Future<Void>>(chunks - 1);
+            for (int c = 0; c < chunks - 1; c++)
+                results.add(executor.submit(new Chunk(
+                        (int) ((long) size * c / chunks),
+                        (int) ((long) size * (c + 1) / chunks))));
+            new Chunk((int) ((long) size * (chunks - 1) / chunks), size)
+                    .call();
+            for (final Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt(); // restore
+                    throw (IOException) new InterruptedIOException()
+                            .initCause(ex);
+                } catch (final ExecutionException ex) {
+                    final Throwable cause = ex.getCause();
+                    if (cause instanceof ZipException)
+                        throw (ZipException) cause;
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new AssertionError(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // The executor's queue and futures provide the happens-before
+        // relationship for the list elements.
+        return entries;
+    }
+
+    /**
+     * Creates a new entry from the Central File Header record at the given
+     * offset in the given buffer.
+     * The record must be complete, i.e. including the file name, the extra
+     * field and the file comment.
+     *
+     * @param  buf the buffer with the record.
+     * @param  off the offset of the record in the buffer.
+     * @param  charset the character set for decoding the entry name and
+     *         comment.
+     * @return A new entry.
+     * @throws ZipException If the meta data of the entry is invalid.
+     */
+    private E newEntry(final byte[] buf, int off, final Charset charset)
+    throws ZipException {
+        final int nameLen = readUShort(buf, off + 28);
+        final E entry = this.param.newEntry(
+                new String(buf, off + CFH_MIN_LEN, nameLen, charset));
+        try {
+            // central file header signature   4 bytes  (0x02014b50)
+            off += 4;
+            // version made by                 2 bytes
+            entry.setRawPlatform(readUShort(buf, off) >> 8);
+            off += 2;
+            // version needed to extract       2 bytes
+            off += 2;
+            // general purpose bit flag        2 bytes
+            entry.setGeneralPurposeBitFlags(readUShort(buf, off));
+            off += 2; // General Purpose Bit Flags
+            // compression method              2 bytes
+            entry.setRawMethod(readUShort(buf, off));
+            off += 2;
+            // last mod file time              2 bytes
+            // last mod file date              2 bytes
+            entry.setRawTime(readUInt(buf, off));
+            off += 4;
+            // crc-32                          4 bytes
+            entry.setRawCrc(readUInt(buf, off));
+            off += 4;
+            // compressed size                 4 bytes
+            entry.setRawCompressedSize(readUInt(buf, off));
+            off += 4;
+            // uncompressed size               4 bytes
+            entry.setRawSize(readUInt(buf, off));
+            off += 4;
+            // file name length                2 bytes
+            off += 2;
+            // extra field length              2 bytes
+            final int extraLen = readUShort(buf, off);
+            off += 2;
+            // file comment length             2 bytes
+            final int commentLen = readUShort(buf, off);
+            off += 2;
+            // disk number start               2 bytes
+            off += 2;
+            // internal file attributes        2 bytes
+            //entry.setEncodedInternalAttributes(readUShort(buf, off));
+            off += 2;
+            // external file attributes        4 bytes
+            entry.setRawExternalAttributes(readUInt(buf, off));
+            off += 4;
+            // relative offset of local header 4 bytes
+            entry.setRawOffset(readUInt(buf, off)); // must be unmapped!
+            off += 4;
+            // file name (variable size)
+            off += nameLen;
+            // extra field (variable size)
+            if (0 < extraLen) {
+                entry.setRawExtraFields(
+                        Arrays.copyOfRange(buf, off, off + extraLen));
+                off += extraLen;
+            }
+            // file comment (variable size)
+            if (0 < commentLen)
+                entry.setRawComment(new String(buf, off, commentLen, charset));
+        } catch (IllegalArgumentException cause) {
+            throw (ZipException) new ZipException(entry.getName()
+                    + " (invalid meta data)").initCause(cause);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns a snapshot of the state of this ZIP file after mounting its
+     * central directory for the {@link CentralDirectoryCache}.
+     */
+    private CentralDirectoryCache.Directory saveCentralDirectory() {
+        final Map<String, E> entries = this.entries;
+        final CompactCentralDirectory table;
+        final ZipEntry[] prototypes;
+        if (entries instanceof RawZipFile<?>.CompactEntries) {
+            // The table is immutable, so it can get shared.
+            table = ((RawZipFile<?>.CompactEntries) entries).table;
+            prototypes = null;
+        } else {
+            table = null;
+            prototypes = new ZipEntry[entries.size()];
+            int i = 0;
+            for (final E entry : entries.values())
+                prototypes[i++] = entry.clone();
+        }
+        final byte[] comment = this.comment;
+        return new CentralDirectoryCache.Directory(
+                this.preamble, this.postamble, this.charset,
+                null == comment ? null : comment.clone(),
+                this.mapper, prototypes, table);
+    }
+
+    /**
+     * Restores the state of this ZIP file after mounting its central
+     * directory from the given snapshot.
+     * This has the same side effects as {@link #findCentralDirectory} and
+     * {@link #mountCentralDirectory}.
+     */
+    @SuppressWarnings("unchecked")
+    private void restoreCentralDirectory(
+            final CentralDirectoryCache.Directory dir) {
+        final ZipEntry[] prototypes = dir.entries;
+        final Map<String, E> entries;
+        if (null == prototypes) {
+            entries = new CompactEntries(dir.table);
+        } else {
+            entries = new LinkedHashMap<String, E>(
+                    Math.max(initialCapacity(prototypes.length), 16));
+            for (final ZipEntry prototype : prototypes) {
+                final E entry = (E) prototype.clone();
+                entries.put(entry.getName(), entry);
+            }
+        }
+        this.preamble = dir.preamble;
+        this.postamble = dir.postamble;
+        this.charset = dir.charset;
+        final byte[] comment = dir.comment;
+        this.comment = null == comment ? null : comment.clone();
+        this.mapper = dir.mapper;
         this.entries = entries;
     }
 
@@ -720,6 +989,10 @@ implements Iterable<E>, Closeable {
         return new String(bytes, charset);
     }
 
+    private String decode(byte[] bytes, int off, int len) {
+        return new String(bytes, off, len, charset);
+    }
+
     final byte[] getRawComment() {
         return this.comment;
     }
@@ -773,7 +1046,9 @@ implements Iterable<E>, Closeable {
 
     /**
      * Returns an iteration of all entries in this ZIP file.
-     * Note that the iterated entries are shared with this instance.
+     * Note that the iterated entries are shared with this instance unless
+     * the central directory has been mounted in
+     * {@link ZipCentralDirectoryParameters compact form}.
      * It is illegal to change their state!
      */
     @Override
@@ -784,7 +1059,9 @@ implements Iterable<E>, Closeable {
     /**
      * Returns the entry for the given name or {@code null} if no entry with
      * this name exists.
-     * Note that the returned entry is shared with this instance.
+     * Note that the returned entry is shared with this instance unless
+     * the central directory has been mounted in
+     * {@link ZipCentralDirectoryParameters compact form}.
      * It is illegal to change its state!
      *
      * @param name the name of the ZIP entry.
@@ -998,7 +1275,7 @@ implements Iterable<E>, Closeable {
         try {
             if (!process) {
                 assert UNKNOWN != entry.getCrc();
-                return new ReadOnlyFileInputStream(erof);
+                return new RawEntryInputStream(erof, fp);
             }
             if (null == check)
                 check = entry.isEncrypted();
@@ -1135,6 +1412,207 @@ implements Iterable<E>, Closeable {
         }
     } // EntryReadOnlyFile
 
+    /**
+     * An input stream for the raw data of an entry which can transfer the
+     * remaining data directly from the file channel of the raw ZIP file if
+     * it reads a file in the platform file system.
+     */
+    private final class RawEntryInputStream
+    extends ReadOnlyFileInputStream
+    implements FileChannelSource {
+        /** The position of the entry data in the raw ZIP file. */
+        private final long start;
+
+        RawEntryInputStream(final ReadOnlyFile erof, final long start) {
+            super(erof);
+            this.start = start;
+        }
+
+        @Override
+        public long transferTo(final FileChannelSink sink) throws IOException {
+            final ReadOnlyFile rof = rof();
+            final FileChannel channel;
+            if (rof instanceof RandomAccessFile)
+                channel = ((RandomAccessFile) rof).getChannel();
+            else if (rof instanceof MappedReadOnlyFile)
+                channel = ((MappedReadOnlyFile) rof).getChannel();
+            else
+                return -1;
+            final ReadOnlyFile erof = this.rof;
+            final long fp = erof.getFilePointer();
+            final long length = erof.length();
+            final long n = sink.transferFrom(channel, start + fp, length - fp);
+            if (0 <= n)
+                erof.seek(length);
+            return n;
+        }
+    } // RawEntryInputStream
+
+    /**
+     * A buffer for the Central File Header records of a ZIP file which
+     * get parsed later.
+     */
+    private static final class RecordBuffer {
+        byte[] data;
+        int length;
+        int[] offsets;
+        int size;
+
+        /** The index of the first record which uses UTF-8. */
+        int utf8 = Integer.MAX_VALUE;
+
+        Charset charset;
+
+        RecordBuffer(final int numEntries) {
+            final int capacity = Math.max(16, numEntries);
+            this.data = new byte[capacity * (CFH_MIN_LEN + 32)];
+            this.offsets = new int[capacity];
+        }
+
+        void add(final byte[] buf, final int len, final Charset charset)
+        throws ZipException {
+            final int start = this.length;
+            final int end = start + len;
+            if (end < 0)
+                throw new ZipException("Central Directory too large!");
+            if (data.length < end)
+                data = Arrays.copyOf(data, (int) Math.min(Integer.MAX_VALUE,
+                        Math.max(end, data.length * 3L / 2)));
+            System.arraycopy(buf, 0, data, start, len);
+            this.length = end;
+            if (offsets.length <= size)
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            if (null == this.charset)
+                this.charset = charset;
+            else if (!this.charset.equals(charset) && Integer.MAX_VALUE == utf8)
+                utf8 = size;
+            offsets[size++] = start;
+        }
+
+        Charset charset(final int i) {
+            return utf8 <= i ? UTF8 : charset;
+        }
+    } // RecordBuffer
+
+    private static final class ParserThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(
+                    ThreadGroups.getServerThreadGroup(), r,
+                    RawZipFile.class.getName() + ".ParserThread");
+            thread.setDaemon(true);
+            return thread;
+        }
+    } // ParserThreadFactory
+
+    /**
+     * A map view of a compact central directory which creates its entries
+     * on demand.
+     * Entries which get recovered by {@link #recoverLostEntries()} get put
+     * into overlay maps.
+     */
+    private final class CompactEntries extends AbstractMap<String, E> {
+        final CompactCentralDirectory table;
+
+        /** The entries which replace entries in the table. */
+        final Map<String, E> replaced = new LinkedHashMap<String, E>();
+
+        /** The entries which are not in the table. */
+        final Map<String, E> added = new LinkedHashMap<String, E>();
+
+        CompactEntries(final CompactCentralDirectory table) {
+            this.table = table;
+        }
+
+        E entry(final int i) {
+            final E entry = replaced.isEmpty()
+                    ? null
+                    : replaced.get(table.name(i));
+            if (null != entry)
+                return entry;
+            try {
+                return newEntry(table.data(), table.offset(i), table.charset(i));
+            } catch (final ZipException ex) {
+                throw new IllegalArgumentException(ex.getMessage(), ex);
+            }
+        }
+
+        @Override
+        public int size() {
+            return table.size() + added.size();
+        }
+
+        @Override
+        public boolean containsKey(Object name) {
+            return null != get(name);
+        }
+
+        @Override
+        public E get(final Object name) {
+            if (!(name instanceof String))
+                return null;
+            final E entry = added.get(name);
+            if (null != entry)
+                return entry;
+            final int i = table.indexOf((String) name);
+            return 0 <= i ? entry(i) : null;
+        }
+
+        @Override
+        public E put(final String name, final E entry) {
+            final E old = get(name);
+            if (0 <= table.indexOf(name))
+                replaced.put(name, entry);
+            else
+                added.put(name, entry);
+            return old;
+        }
+
+        @Override
+        public Set<Map.Entry<String, E>> entrySet() {
+            return new AbstractSet<Map.Entry<String, E>>() {
+                @Override
+                public int size() {
+                    return CompactEntries.this.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, E>> iterator() {
+                    return new EntryIterator();
+                }
+            };
+        }
+
+        private final class EntryIterator
+        implements Iterator<Map.Entry<String, E>> {
+            final Iterator<Map.Entry<String, E>>
+                    added = CompactEntries.this.added.entrySet().iterator();
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < table.size() || added.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, E> next() {
+                if (next < table.size()) {
+                    final E entry = entry(next++);
+                    return new SimpleImmutableEntry<String, E>(
+                            entry.getName(), entry);
+                }
+                final Map.Entry<String, E> entry = added.next();
+                return new SimpleImmutableEntry<String, E>(
+                        entry.getKey(), entry.getValue());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        } // EntryIterator
+    } // CompactEntries
+
     /**
      * A buffered read only file which is safe for use with a concurrently
      * growing file, e.g. when another thread is appending to it.
@@ -6,7 +6,9 @@ package de.schlichtherle.truezip.zip;
 
 import de.schlichtherle.truezip.crypto.param.AesKeyStrength;
 import de.schlichtherle.truezip.io.DecoratingOutputStream;
+import de.schlichtherle.truezip.io.FileChannelSink;
 import de.schlichtherle.truezip.io.LEDataOutputStream;
+import de.schlichtherle.truezip.util.ThreadGroups;
 import static de.schlichtherle.truezip.util.HashMaps.initialCapacity;
 import static de.schlichtherle.truezip.zip.Constants.*;
 import static de.schlichtherle.truezip.zip.ExtraField.WINZIP_AES_ID;
@@ -15,10 +17,15 @@ import static de.schlichtherle.truezip.zip.WinZipAesEntryExtraField.VV_AE_2;
 import static de.schlichtherle.truezip.zip.WinZipAesUtils.overhead;
 import static de.schlichtherle.truezip.zip.ZipEntry.*;
 import static de.schlichtherle.truezip.zip.ZipParametersUtils.parameters;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 import java.util.zip.ZipException;
 import libtruezip.compress.bzip2.BZip2CompressorOutputStream;
@@ -36,7 +43,7 @@ import libtruezip.compress.bzip2.BZip2CompressorOutputStream;
  */
 public abstract class RawZipOutputStream<E extends ZipEntry>
 extends DecoratingOutputStream
-implements Iterable<E> {
+implements Iterable<E>, FileChannelSink {
 
     private final LEDataOutputStream dos;
 
@@ -68,6 +75,19 @@ implements Iterable<E> {
 
     private OutputMethod processor;
 
+    /** The nullable parameters for parallel deflating. */
+    private final ZipDeflaterParameters deflaterParam;
+
+    /**
+     * The queue of entries which have been closed, but still need to get
+     * written because they are deflated by a worker thread.
+     */
+    private final Queue<ParallelDeflaterOutputMethod> deferred
+            = new ArrayDeque<ParallelDeflaterOutputMethod>();
+
+    /** The nullable executor for deflating entries in parallel. */
+    private ExecutorService deflaterExecutor;
+
     /**
      * Constructs a raw ZIP output stream which decorates the given output
      * stream and optionally apppends to the given raw ZIP file.
@@ -101,6 +121,16 @@ implements Iterable<E> {
         }
         setMethod0(param.getMethod());
         setLevel0(param.getLevel());
+        this.deflaterParam = deflaterParameters(param);
+    }
+
+    private static ZipDeflaterParameters deflaterParameters(
+            final ZipParameters param) {
+        try {
+            return parameters(ZipDeflaterParameters.class, param);
+        } catch (final ZipParametersException notAvailable) {
+            return null;
+        }
     }
 
     @SuppressWarnings("resource")
@@ -346,6 +376,8 @@ implements Iterable<E> {
         final OutputMethod method = newOutputMethod(entry, process);
         method.init(entry.clone()); // test!
         method.init(entry);
+        if (!(method instanceof RawZipOutputStream<?>.ParallelDeflaterOutputMethod))
+            writeDeferred(0);
         this.delegate = method.start();
         this.processor = method;
         // Store entry now so that a subsequent call to getEntry(...) returns
@@ -395,6 +427,14 @@ implements Iterable<E> {
                     processor = new Crc32CheckingOutputMethod(processor);
                 break;
             case DEFLATED:
+                if (isDeferrable(entry, processor)) {
+                    processor = new ParallelDeflaterOutputMethod(processor);
+                    break;
+                }
+                if (isBlockDeflatable(entry, processor)) {
+                    processor = new BlockDeflaterOutputMethod(processor);
+                    break;
+                }
                 processor = new DeflaterOutputMethod(processor);
                 if (!skipCrc)
                     processor = new Crc32UpdatingOutputMethod(processor);
@@ -413,6 +453,78 @@ implements Iterable<E> {
         return processor;
     }
 
+    /**
+     * Returns {@code true} if and only if the contents of the given entry
+     * should get buffered and deflated by a worker thread.
+     */
+    private boolean isDeferrable(
+            final ZipEntry entry,
+            final OutputMethod processor) {
+        final ZipDeflaterParameters param = this.deflaterParam;
+        if (null == param || param.getDeflaterThreads() < 2)
+            return false;
+        if (!(processor instanceof RawZipOutputStream<?>.RawOutputMethod))
+            return false; // encrypted
+        final long size = entry.getSize();
+        return UNKNOWN != size && size <= param.getDeflaterBufferSize();
+    }
+
+    /**
+     * Returns {@code true} if and only if the contents of the given entry
+     * should get split into blocks which are deflated by worker threads.
+     */
+    private boolean isBlockDeflatable(
+            final ZipEntry entry,
+            final OutputMethod processor) {
+        final ZipDeflaterParameters param = this.deflaterParam;
+        if (null == param || param.getDeflaterThreads() < 2)
+            return false;
+        if (!(processor instanceof RawZipOutputStream<?>.RawOutputMethod))
+            return false; // encrypted
+        final long size = entry.getSize();
+        return UNKNOWN != size && param.getBlockDeflaterThreshold() <= size;
+    }
+
+    /**
+     * Writes the entries which have been deflated by a worker thread in
+     * order until at most {@code max} entries are left in the queue.
+     * Entries which have already been deflated get written even if this
+     * would leave less than {@code max} entries in the queue.
+     */
+    private void writeDeferred(final int max) throws IOException {
+        final Queue<ParallelDeflaterOutputMethod> deferred = this.deferred;
+        for (ParallelDeflaterOutputMethod method;
+                null != (method = deferred.peek()); ) {
+            if (deferred.size() <= max && !method.isDone())
+                break;
+            deferred.remove();
+            method.write();
+        }
+    }
+
+    private ExecutorService getDeflaterExecutor() {
+        ExecutorService executor = this.deflaterExecutor;
+        if (null == executor) {
+            final int threads = this.deflaterParam.getDeflaterThreads();
+            final ThreadPoolExecutor tpe = new ThreadPoolExecutor(
+                    threads, threads,
+                    1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new DeflaterThreadFactory());
+            tpe.allowCoreThreadTimeOut(true);
+            this.deflaterExecutor = executor = tpe;
+        }
+        return executor;
+    }
+
+    private void shutdownDeflaterExecutor() {
+        final ExecutorService executor = this.deflaterExecutor;
+        if (null != executor) {
+            this.deflaterExecutor = null;
+            executor.shutdown();
+        }
+    }
+
     /**
      * Returns a new {@code EncryptedOutputMethod}.
      *
@@ -453,6 +565,22 @@ implements Iterable<E> {
         throw new ZipParametersException("No suitable crypto parameters available!");
     }
 
+    /**
+     * Transfers the given region of the given file channel to the data of
+     * the current entry if it is written without processing, i.e. if its
+     * data is copied in raw form from another ZIP file.
+     * Otherwise, nothing is written and {@code -1} is returned.
+     */
+    @Override
+    public long transferFrom(FileChannel src, long position, long count)
+    throws IOException {
+        return null != entry
+                && delegate == dos
+                && processor instanceof RawZipOutputStream<?>.RawOutputMethod
+                ? dos.transferFrom(src, position, count)
+                : -1;
+    }
+
     /**
      * Writes all necessary data for this entry to the underlying stream.
      *
@@ -494,6 +622,11 @@ implements Iterable<E> {
         if (this.finished)
             return;
         closeEntry();
+        try {
+            writeDeferred(0);
+        } finally {
+            shutdownDeflaterExecutor();
+        }
         final LEDataOutputStream dos = this.dos;
         this.cdOffset = dos.size();
         final Iterator<E> i = this.entries.values().iterator();
@@ -1023,11 +1156,240 @@ implements Iterable<E> {
             final ZipEntry entry = this.entry;
             //entry.setRawCompressedSize(deflater.getBytesWritten());
             entry.setRawSize(deflater.getBytesRead());
-            deflater.end();
+            this.out.end();
             this.delegate.finish();
         }
     } // DeflaterOutputMethod
 
+    /**
+     * Buffers the uncompressed entry contents in memory and deflates them on
+     * a worker thread so that the current thread can continue with the next
+     * entry.
+     * The Local File Header, the compressed data and the Data Descriptor are
+     * written later on by {@link #write()} in the same order and format as
+     * if the entry had been processed by the {@link DeflaterOutputMethod}.
+     * <p>
+     * The size of the entry is only a hint, so if more data than
+     * {@link ZipDeflaterParameters#getDeflaterBufferSize()} gets written,
+     * then this method writes all deferred entries, stops buffering and
+     * deflates the entry contents by the current thread instead.
+     */
+    private final class ParallelDeflaterOutputMethod
+    extends DecoratingOutputMethod {
+        EntryBuffer buffer;
+        Future<Deflated> result;
+        ZipEntry entry;
+
+        /** The output method for deflating by the current thread, if any. */
+        OutputMethod inline;
+        OutputStream inlineOut;
+
+        ParallelDeflaterOutputMethod(OutputMethod processor) {
+            super(processor);
+        }
+
+        @Override
+        public void init(final ZipEntry entry) throws ZipException  {
+            entry.setCompressedSize(UNKNOWN);
+            this.delegate.init(entry);
+            this.entry = entry;
+        }
+
+        @Override
+        public OutputStream start() throws IOException {
+            assert null == this.buffer;
+            final int limit = deflaterParam.getDeflaterBufferSize();
+            this.buffer = new EntryBuffer((int) this.entry.getSize());
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len)
+                throws IOException {
+                    OutputStream out = inlineOut;
+                    if (null == out) {
+                        final EntryBuffer buffer = ParallelDeflaterOutputMethod.this.buffer;
+                        if (buffer.size() + len <= limit) {
+                            buffer.write(b, off, len);
+                            return;
+                        }
+                        out = startInline();
+                    }
+                    out.write(b, off, len);
+                }
+            };
+        }
+
+        /**
+         * Writes all deferred entries, starts deflating this entry by the
+         * current thread and writes the buffered data to it.
+         */
+        private OutputStream startInline() throws IOException {
+            writeDeferred(0);
+            final OutputMethod inline = new Crc32UpdatingOutputMethod(
+                    new DeflaterOutputMethod(this.delegate));
+            inline.init(this.entry);
+            final OutputStream out = inline.start();
+            this.buffer.writeTo(out);
+            this.buffer = null;
+            this.inline = inline;
+            return this.inlineOut = out;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            assert null == this.result;
+            if (null != this.inline) {
+                this.inline.finish();
+                return;
+            }
+            final EntryBuffer buffer = this.buffer;
+            final int level = RawZipOutputStream.this.getLevel();
+            final class DeflaterTask implements Callable<Deflated> {
+                @Override
+                public Deflated call() throws IOException {
+                    return new Deflated(buffer, level);
+                }
+            } // DeflaterTask
+            this.result = getDeflaterExecutor().submit(new DeflaterTask());
+            this.buffer = null;
+            deferred.add(this);
+            writeDeferred(deflaterParam.getDeflaterThreads());
+        }
+
+        boolean isDone() {
+            return this.result.isDone();
+        }
+
+        /**
+         * Writes the Local File Header, the deflated data and the Data
+         * Descriptor.
+         */
+        void write() throws IOException {
+            final Deflated deflated;
+            try {
+                deflated = this.result.get();
+            } catch (final InterruptedException ex) {
+                this.result.cancel(true);
+                Thread.currentThread().interrupt(); // restore
+                throw (IOException) new InterruptedIOException(
+                        this.entry.getName()).initCause(ex);
+            } catch (final ExecutionException ex) {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new AssertionError(cause);
+            }
+            final OutputStream out = this.delegate.start();
+            deflated.data.writeTo(out);
+            final ZipEntry entry = this.entry;
+            entry.setRawCrc(deflated.crc);
+            entry.setRawSize(deflated.size);
+            this.delegate.finish();
+        }
+    } // ParallelDeflaterOutputMethod
+
+    /**
+     * Deflates the entry contents in blocks on worker threads.
+     * Like the {@link ParallelDeflaterOutputMethod}, this method computes the
+     * CRC-32 checksum itself, so it must not get decorated with a
+     * {@link Crc32UpdatingOutputMethod}.
+     */
+    private final class BlockDeflaterOutputMethod
+    extends DecoratingOutputMethod {
+        ZipBlockDeflaterOutputStream out;
+        ZipEntry entry;
+
+        BlockDeflaterOutputMethod(OutputMethod processor) {
+            super(processor);
+        }
+
+        @Override
+        public void init(final ZipEntry entry) throws ZipException  {
+            entry.setCompressedSize(UNKNOWN);
+            this.delegate.init(entry);
+            this.entry = entry;
+        }
+
+        @Override
+        public OutputStream start() throws IOException {
+            assert null == this.out;
+            final int threads = deflaterParam.getDeflaterThreads();
+            return this.out = new ZipBlockDeflaterOutputStream(
+                    this.delegate.start(),
+                    RawZipOutputStream.this.getLevel(),
+                    getDeflaterExecutor(),
+                    2 * threads);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            final ZipBlockDeflaterOutputStream out = this.out;
+            out.finish();
+            final ZipEntry entry = this.entry;
+            entry.setRawCrc(out.getCrc());
+            entry.setRawSize(out.getBytesRead());
+            this.delegate.finish();
+        }
+    } // BlockDeflaterOutputMethod
+
+    /** A memory buffer for the contents of an entry. */
+    private static final class EntryBuffer extends ByteArrayOutputStream {
+        EntryBuffer(int size) {
+            super(Math.max(32, size));
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    } // EntryBuffer
+
+    /** The deflated contents of an entry. */
+    private static final class Deflated {
+        final EntryBuffer data;
+        final long crc;
+        final long size;
+
+        Deflated(final EntryBuffer buffer, final int level)
+        throws IOException {
+            final byte[] buf = buffer.array();
+            final int len = buffer.size();
+            final CRC32 crc = new CRC32();
+            crc.update(buf, 0, len);
+            final EntryBuffer data = new EntryBuffer(len / 2);
+            final ZipDeflaterOutputStream out = new ZipDeflaterOutputStream(
+                    data, level, MAX_FLATER_BUF_LENGTH);
+            try {
+                out.write(buf, 0, len);
+                out.finish();
+                this.size = out.getDeflater().getBytesRead();
+            } finally {
+                out.end();
+            }
+            this.data = data;
+            this.crc = crc.getValue();
+        }
+    } // Deflated
+
+    /** A factory for deflater threads. */
+    private static final class DeflaterThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(
+                    ThreadGroups.getServerThreadGroup(), r,
+                    RawZipOutputStream.class.getName() + ".DeflaterThread");
+            thread.setDaemon(true);
+            return thread;
+        }
+    } // DeflaterThreadFactory
+
     private abstract class Crc32OutputMethod extends DecoratingOutputMethod {
         Crc32OutputStream out;
 
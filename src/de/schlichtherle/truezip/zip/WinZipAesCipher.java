@@ -4,9 +4,8 @@
  */
 package de.schlichtherle.truezip.zip;
 
+import de.schlichtherle.truezip.crypto.CryptoBackend;
 import de.schlichtherle.truezip.crypto.SICSeekableBlockCipher;
-import libtruezip.lcrypto.crypto.DataLengthException;
-import libtruezip.lcrypto.crypto.engines.AESFastEngine;
 
 /**
  * Implements Counter (CTR) mode (alias Segmented Integer Counter - SIC)
@@ -23,43 +22,25 @@ final class WinZipAesCipher extends SICSeekableBlockCipher {
 
     /**
      * Constructs a new block cipher mode for use with WinZip AES.
-     * This constructor uses an {@link AESFastEngine} as the underlying block
-     * cipher.
+     * This constructor uses an AES engine from the
+     * {@linkplain CryptoBackend#get() current crypto backend} as the
+     * underlying block cipher.
      */
     WinZipAesCipher() {
-        super(new AESFastEngine());
+        super(CryptoBackend.get().newAesEngine());
     }
 
     @Override
-    public int processBlock(
-            final byte[] in,
-            int inOff,
+    protected void counterBlock(
+            long blockCounter,
             final byte[] out,
-            int outOff)
-    throws DataLengthException, IllegalStateException {
-        incCounter();
-        this.cipher.processBlock(this.cipherIn, 0, this.cipherOut, 0);
-
-        // XOR the cipherOut with the plaintext producing the cipher text.
-        final int blockSize = this.blockSize;
-        {
-            int i = blockSize;
-            inOff += i;
-            outOff += i;
-            while (i > 0)
-                out[--outOff] = (byte) (in[--inOff] ^ this.cipherOut[--i]);
-        }
-
-        return blockSize;
-    }
-
-    private void incCounter() {
-        final int blockSize = this.blockSize;
-        long blockCounter = ++this.blockCounter; // pre-increment the block counter!
-        for (int i = 0; i < blockSize; i++) { // little endian order!
+            final int outOff) {
+        final byte[] IV = this.IV;
+        blockCounter++; // pre-increment the block counter!
+        for (int i = 0, blockSize = this.blockSize; i < blockSize; i++) { // little endian order!
             blockCounter += IV[i] & 0xff;
-            this.cipherIn[i] = (byte) blockCounter;
+            out[outOff + i] = (byte) blockCounter;
             blockCounter >>>= 8;
         }
     }
-}
\ No newline at end of file
+}
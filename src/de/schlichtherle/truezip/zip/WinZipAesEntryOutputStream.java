@@ -5,18 +5,17 @@
 package de.schlichtherle.truezip.zip;
 
 import de.schlichtherle.truezip.crypto.CipherOutputStream;
+import de.schlichtherle.truezip.crypto.CryptoBackend;
 import de.schlichtherle.truezip.crypto.FilterMacOutputStream;
+import de.schlichtherle.truezip.crypto.ParallelPKCS5S2ParametersGenerator;
+import de.schlichtherle.truezip.crypto.SeekableBufferedBlockCipher;
 import de.schlichtherle.truezip.crypto.param.KeyStrength;
 import de.schlichtherle.truezip.io.LEDataOutputStream;
 
 import java.io.IOException;
 import java.security.SecureRandom;
-import libtruezip.lcrypto.crypto.BufferedBlockCipher;
 import libtruezip.lcrypto.crypto.Mac;
 import libtruezip.lcrypto.crypto.PBEParametersGenerator;
-import libtruezip.lcrypto.crypto.digests.SHA1Digest;
-import libtruezip.lcrypto.crypto.generators.PKCS5S2ParametersGenerator;
-import libtruezip.lcrypto.crypto.macs.HMac;
 import libtruezip.lcrypto.crypto.params.KeyParameter;
 import libtruezip.lcrypto.crypto.params.ParametersWithIV;
 
@@ -63,7 +62,7 @@ final class WinZipAesEntryOutputStream extends CipherOutputStream {
             final LEDataOutputStream out,
             final WinZipAesEntryParameters param)
     throws IOException {
-        super(out, new BufferedBlockCipher(new WinZipAesCipher()));
+        super(out, new SeekableBufferedBlockCipher(new WinZipAesCipher()));
         assert null != out;
         assert null != param;
         this.param = param;
@@ -81,7 +80,7 @@ final class WinZipAesEntryOutputStream extends CipherOutputStream {
         final byte[] passwd = param.getWritePassword();
 
         // Derive cipher and MAC parameters.
-        final PBEParametersGenerator gen = new PKCS5S2ParametersGenerator();
+        final PBEParametersGenerator gen = new ParallelPKCS5S2ParametersGenerator();
         gen.init(passwd, salt, ITERATION_COUNT);
         // Here comes the strange part about WinZip AES encryption:
         // Its unorthodox use of the Password-Based Key Derivation
@@ -92,6 +91,14 @@ final class WinZipAesEntryOutputStream extends CipherOutputStream {
         final KeyParameter keyParam =
                 (KeyParameter) gen.generateDerivedParameters(
                     2 * keyStrengthBits + PWD_VERIFIER_BITS);
+        // Cache the derived key for reading this entry if the cache is
+        // enabled, which it is not by default.
+        // Note that the salt must not get reused for another entry because
+        // the IV is constant, so the key must be unique for each entry.
+        final WinZipAesKeyCache cache = WinZipAesKeyCache.SINGLETON;
+        final WinZipAesKeyCache.Key key = cache.key(passwd, salt, keyStrengthBits);
+        if (null != key)
+            cache.put(key, keyParam.getKey());
         paranoidWipe(passwd); // must not wipe before generator use!
 
         // Can you believe they "forgot" the nonce in the CTR mode IV?! :-(
@@ -108,7 +115,7 @@ final class WinZipAesEntryOutputStream extends CipherOutputStream {
         this.cipher.init(true, aesCtrParam);
 
         // Init MAC.
-        final Mac mac = this.mac = new HMac(new SHA1Digest());
+        final Mac mac = this.mac = CryptoBackend.get().newHMacSha1();
         mac.init(sha1HMacParam);
 
         // Reinit chain of output streams as Encrypt-then-MAC.
@@ -5,6 +5,8 @@
 package de.schlichtherle.truezip.zip;
 
 import de.schlichtherle.truezip.crypto.CipherReadOnlyFile;
+import de.schlichtherle.truezip.crypto.CryptoBackend;
+import de.schlichtherle.truezip.crypto.ParallelPKCS5S2ParametersGenerator;
 import de.schlichtherle.truezip.crypto.SeekableBlockCipher;
 import de.schlichtherle.truezip.crypto.SuspensionPenalty;
 import de.schlichtherle.truezip.crypto.param.AesKeyStrength;
@@ -16,9 +18,6 @@ import java.io.EOFException;
 import java.io.IOException;
 import libtruezip.lcrypto.crypto.Mac;
 import libtruezip.lcrypto.crypto.PBEParametersGenerator;
-import libtruezip.lcrypto.crypto.digests.SHA1Digest;
-import libtruezip.lcrypto.crypto.generators.PKCS5S2ParametersGenerator;
-import libtruezip.lcrypto.crypto.macs.HMac;
 import libtruezip.lcrypto.crypto.params.KeyParameter;
 import libtruezip.lcrypto.crypto.params.ParametersWithIV;
 
@@ -43,6 +42,9 @@ final class WinZipAesEntryReadOnlyFile extends CipherReadOnlyFile {
      */
     private final KeyParameter sha1MacParam;
 
+    /** The parameters required to init the AES cipher in CTR mode. */
+    private final ParametersWithIV aesCtrParam;
+
     private final ZipEntry entry;
 
     WinZipAesEntryReadOnlyFile(
@@ -74,7 +76,7 @@ final class WinZipAesEntryReadOnlyFile extends CipherReadOnlyFile {
         rof.readFully(passwdVerifier);
 
         // Init MAC and authentication code.
-        final Mac mac = new HMac(new SHA1Digest());
+        final Mac mac = CryptoBackend.get().newHMacSha1();
         this.authenticationCode = new byte[mac.getMacSize() / 2];
 
         // Init start, end and length of encrypted data.
@@ -99,24 +101,33 @@ final class WinZipAesEntryReadOnlyFile extends CipherReadOnlyFile {
         }
 
         // Derive cipher and MAC parameters.
-        final PBEParametersGenerator gen = new PKCS5S2ParametersGenerator();
+        final PBEParametersGenerator gen = new ParallelPKCS5S2ParametersGenerator();
         KeyParameter keyParam;
         ParametersWithIV aesCtrParam;
         KeyParameter sha1MacParam;
+        final WinZipAesKeyCache cache = WinZipAesKeyCache.SINGLETON;
+        WinZipAesKeyCache.Key key;
         long lastTry = 0; // don't enforce suspension on first prompt!
         do {
             final byte[] passwd = param.getReadPassword(0 != lastTry);
             assert null != passwd;
 
-            gen.init(passwd, salt, ITERATION_COUNT);
-            // Here comes the strange part about WinZip AES encryption:
-            // Its unorthodox use of the Password-Based Key Derivation
-            // Function 2 (PBKDF2) of PKCS #5 V2.0 alias RFC 2898.
-            // Yes, the password verifier is only a 16 bit value.
-            // So we must use the MAC for password verification, too.
-            assert AES_BLOCK_SIZE_BITS <= keyStrengthBits;
-            keyParam = (KeyParameter) gen.generateDerivedParameters(
-                    2 * keyStrengthBits + PWD_VERIFIER_BITS);
+            key = cache.key(passwd, salt, keyStrengthBits);
+            final byte[] cached = null != key ? cache.get(key) : null;
+            if (null != cached) {
+                keyParam = new KeyParameter(cached);
+                paranoidWipe(cached);
+            } else {
+                gen.init(passwd, salt, ITERATION_COUNT);
+                // Here comes the strange part about WinZip AES encryption:
+                // Its unorthodox use of the Password-Based Key Derivation
+                // Function 2 (PBKDF2) of PKCS #5 V2.0 alias RFC 2898.
+                // Yes, the password verifier is only a 16 bit value.
+                // So we must use the MAC for password verification, too.
+                assert AES_BLOCK_SIZE_BITS <= keyStrengthBits;
+                keyParam = (KeyParameter) gen.generateDerivedParameters(
+                        2 * keyStrengthBits + PWD_VERIFIER_BITS);
+            }
             paranoidWipe(passwd);
 
             // Can you believe they "forgot" the nonce in the CTR mode IV?! :-(
@@ -136,15 +147,16 @@ final class WinZipAesEntryReadOnlyFile extends CipherReadOnlyFile {
                 keyParam.getKey(), 2 * keyStrengthBytes,
                 passwdVerifier, 0,
                 PWD_VERIFIER_BITS / 8));
+        if (null != key)
+            cache.put(key, keyParam.getKey());
 
         // Init parameters and entry for authenticate().
         this.sha1MacParam = sha1MacParam;
         this.entry = entry;
 
         // Init cipher.
-        final SeekableBlockCipher cipher = new WinZipAesCipher();
-        cipher.init(false, aesCtrParam);
-        init(cipher, start, length);
+        this.aesCtrParam = aesCtrParam;
+        init(newCipher(), start, length);
 
         // Commit key strength to parameters.
         param.setKeyStrength(keyStrength);
@@ -156,6 +168,13 @@ final class WinZipAesEntryReadOnlyFile extends CipherReadOnlyFile {
             pwd[i] = 0;
     }
 
+    @Override
+    protected SeekableBlockCipher newCipher() {
+        final SeekableBlockCipher cipher = new WinZipAesCipher();
+        cipher.init(false, aesCtrParam);
+        return cipher;
+    }
+
     /**
      * Authenticates all encrypted data in this read only file.
      * It is safe to call this method multiple times to detect if the file
@@ -166,7 +185,7 @@ final class WinZipAesEntryReadOnlyFile extends CipherReadOnlyFile {
      * @throws IOException On any I/O related issue.
      */
     void authenticate() throws IOException {
-        final Mac mac = new HMac(new SHA1Digest());
+        final Mac mac = CryptoBackend.get().newHMacSha1();
         mac.init(sha1MacParam);
         final byte[] buf = computeMac(mac);
         if (!ArrayHelper.equals(buf, 0, authenticationCode, 0, authenticationCode.length))
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.zip;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import libtruezip.lcrypto.crypto.Digest;
+import libtruezip.lcrypto.crypto.digests.SHA256Digest;
+
+/**
+ * A process wide cache of the keys which get derived from a password and a
+ * salt for WinZip AES entries.
+ * Deriving these keys requires {@value WinZipAesEntryOutputStream#ITERATION_COUNT}
+ * iterations of the Password-Based Key Derivation Function 2 (PBKDF2).
+ * Each entry has its own random salt, so a cached key only gets reused when
+ * the same entry gets read again, e.g. after an entry has been written by
+ * the same process or when an archive file gets remounted.
+ * <p>
+ * The cache is keyed by a SHA-256 digest of the password, the salt and the
+ * key strength, so it never holds a password.
+ * The cache is bounded by the number of cached keys.
+ * If adding a key would exceed this bound, then the least recently used key
+ * gets evicted.
+ * Evicted keys get zeroed.
+ * <p>
+ * Note that the cache retains the derived key material of the cached
+ * entries in the heap for the lifetime of the process unless it gets
+ * evicted or {@link #clear() cleared}.
+ * This is why the cache is disabled by default.
+ * The initial maximum number of cached keys gets read from the system
+ * property {@code de.schlichtherle.truezip.zip.WinZipAesKeyCache.maxEntries}
+ * and defaults to {@value #DEFAULT_MAX_ENTRIES}, which disables the cache.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author  Christian Schlichtherle
+ */
+public final class WinZipAesKeyCache {
+
+    /** The default maximum number of cached keys, which is {@value}. */
+    public static final int DEFAULT_MAX_ENTRIES = 0;
+
+    /** The cache which is used by the classes in this package. */
+    public static final WinZipAesKeyCache SINGLETON
+            = new WinZipAesKeyCache(Integer.getInteger(
+                WinZipAesKeyCache.class.getName() + ".maxEntries",
+                DEFAULT_MAX_ENTRIES));
+
+    private final Map<Key, byte[]> keys
+            = new LinkedHashMap<Key, byte[]>(16, 0.75f, true);
+    private int maxEntries;
+    private long hits, misses, evictions;
+
+    private WinZipAesKeyCache(final int maxEntries) {
+        setMaxEntries(maxEntries);
+    }
+
+    /**
+     * Returns the maximum number of cached keys.
+     *
+     * @return The maximum number of cached keys.
+     */
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of cached keys.
+     * If the new value is less than the current number of cached keys, then
+     * the least recently used keys get evicted immediately.
+     * Setting this to zero disables the cache.
+     *
+     * @param  maxEntries the maximum number of cached keys.
+     * @throws IllegalArgumentException if {@code maxEntries} is negative.
+     */
+    public synchronized void setMaxEntries(final int maxEntries) {
+        if (maxEntries < 0)
+            throw new IllegalArgumentException();
+        this.maxEntries = maxEntries;
+        evict();
+    }
+
+    /** Returns the number of keys which have been reused. */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** Returns the number of keys which have been looked up in vain. */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Returns the number of keys which have been evicted. */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** Returns the number of cached keys. */
+    public synchronized int getEntries() {
+        return keys.size();
+    }
+
+    /** Evicts and zeroes all keys in this cache. */
+    public synchronized void clear() {
+        for (final byte[] key : keys.values())
+            Arrays.fill(key, (byte) 0);
+        keys.clear();
+    }
+
+    /**
+     * Returns a key for looking up the derived key for the given
+     * parameters or {@code null} if this cache is disabled.
+     *
+     * @param  passwd the password.
+     * @param  salt the salt.
+     * @param  keyStrengthBits the key strength in bits.
+     * @return A key for looking up the derived key or {@code null}.
+     */
+    Key key(final byte[] passwd, final byte[] salt, final int keyStrengthBits) {
+        if (0 >= getMaxEntries())
+            return null;
+        return new Key(passwd, salt, keyStrengthBits);
+    }
+
+    /**
+     * Returns a copy of the derived key for the given key or {@code null} if
+     * it is not present in this cache.
+     */
+    synchronized byte[] get(final Key key) {
+        final byte[] derived = keys.get(key);
+        if (null == derived) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return derived.clone();
+    }
+
+    /**
+     * Puts a copy of the given derived key for the given key into this
+     * cache.
+     */
+    synchronized void put(final Key key, final byte[] derived) {
+        if (0 >= maxEntries)
+            return;
+        final byte[] old = keys.put(key, derived.clone());
+        if (null != old)
+            Arrays.fill(old, (byte) 0);
+        evict();
+    }
+
+    private void evict() {
+        assert Thread.holdsLock(this);
+        final Iterator<byte[]> i = keys.values().iterator();
+        while (maxEntries < keys.size() && i.hasNext()) {
+            Arrays.fill(i.next(), (byte) 0);
+            i.remove();
+            evictions++;
+        }
+    }
+
+    /** Identifies a password, a salt and a key strength by their digest. */
+    static final class Key {
+        private final byte[] digest;
+        private final int hash;
+
+        Key(final byte[] passwd, final byte[] salt, final int keyStrengthBits) {
+            final Digest sha = new SHA256Digest();
+            sha.update((byte) (keyStrengthBits >>> 8));
+            sha.update((byte) keyStrengthBits);
+            sha.update((byte) salt.length);
+            sha.update(salt, 0, salt.length);
+            sha.update(passwd, 0, passwd.length);
+            final byte[] digest = this.digest = new byte[sha.getDigestSize()];
+            sha.doFinal(digest, 0);
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(final Object that) {
+            if (this == that)
+                return true;
+            if (!(that instanceof Key))
+                return false;
+            return Arrays.equals(digest, ((Key) that).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    } // Key
+}
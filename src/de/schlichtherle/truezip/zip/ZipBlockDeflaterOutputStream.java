@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.zip;
+
+import de.schlichtherle.truezip.io.DecoratingOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A deflater output stream which splits its input into fixed size blocks
+ * and deflates them concurrently on the threads of a given executor service.
+ * <p>
+ * Each block gets deflated by a pooled {@link Deflater} which uses the
+ * last 32 KB of the previous block as its preset dictionary.
+ * All but the last block are terminated with a sync flush, so that the
+ * deflated blocks are byte aligned and their concatenation forms a single
+ * valid DEFLATE stream.
+ * The CRC-32 checksum of each block gets computed by the same worker thread
+ * and combined with the checksums of the previous blocks.
+ * The resulting DEFLATE stream is slightly larger than when deflating the
+ * input as a whole.
+ * <p>
+ * Implementations cannot be thread-safe.
+ *
+ * @author  Christian Schlichtherle
+ */
+final class ZipBlockDeflaterOutputStream extends DecoratingOutputStream {
+
+    /** The size of a block of uncompressed data, which is {@value}. */
+    static final int BLOCK_SIZE = 128 * 1024;
+
+    /** The size of the preset dictionary, which is {@value}. */
+    static final int DICT_SIZE = 32 * 1024;
+
+    private final ExecutorService executor;
+    private final int level;
+    private final int maxBlocks;
+
+    /** The queue of blocks which are being deflated. */
+    private final Queue<Future<Block>> blocks = new ArrayDeque<Future<Block>>();
+
+    private byte[] buf = new byte[BLOCK_SIZE];
+    private int count;
+
+    /** The previous block, which provides the preset dictionary. */
+    private byte[] dict;
+
+    private long crc, read;
+    private boolean finished;
+
+    /**
+     * Constructs a new block deflater output stream.
+     *
+     * @param out the output stream to write the deflated data to.
+     * @param level the compression level.
+     * @param executor the executor service for deflating the blocks.
+     * @param maxBlocks the maximum number of blocks which get deflated
+     *        concurrently.
+     */
+    ZipBlockDeflaterOutputStream(
+            final OutputStream out,
+            final int level,
+            final ExecutorService executor,
+            final int maxBlocks) {
+        super(out);
+        assert null != out;
+        assert null != executor;
+        assert 0 < maxBlocks;
+        this.executor = executor;
+        this.level = level;
+        this.maxBlocks = maxBlocks;
+    }
+
+    /**
+     * Returns the CRC-32 checksum of the data written so far.
+     * This is only accurate after a call to {@link #finish()}.
+     */
+    long getCrc() {
+        return crc;
+    }
+
+    /**
+     * Returns the number of bytes written to this stream so far.
+     * This is only accurate after a call to {@link #finish()}.
+     */
+    long getBytesRead() {
+        return read;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        buf[count++] = (byte) b;
+        if (BLOCK_SIZE <= count)
+            submit(false);
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (0 < len) {
+            final int n = Math.min(BLOCK_SIZE - count, len);
+            System.arraycopy(b, off, buf, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (BLOCK_SIZE <= count)
+                submit(false);
+        }
+    }
+
+    private void submit(final boolean last) throws IOException {
+        assert !finished;
+        blocks.add(executor.submit(new Block(buf, count, dict, level, last)));
+        dict = buf;
+        buf = last ? null : new byte[BLOCK_SIZE];
+        count = 0;
+        writeBlocks(maxBlocks);
+    }
+
+    /**
+     * Writes the deflated blocks in order until at most {@code max} blocks
+     * are left in the queue.
+     * Blocks which have already been deflated get written even if this would
+     * leave less than {@code max} blocks in the queue.
+     */
+    private void writeBlocks(final int max) throws IOException {
+        final Queue<Future<Block>> blocks = this.blocks;
+        for (Future<Block> result; null != (result = blocks.peek()); ) {
+            if (blocks.size() <= max && !result.isDone())
+                break;
+            blocks.remove();
+            final Block block = get(result);
+            delegate.write(block.out, 0, block.outLength);
+            crc = Crc32Utils.combine(crc, block.crc, block.length);
+            read += block.length;
+        }
+    }
+
+    private Block get(final Future<Block> result) throws IOException {
+        try {
+            return result.get();
+        } catch (final InterruptedException ex) {
+            cancel();
+            Thread.currentThread().interrupt(); // restore
+            throw (IOException) new InterruptedIOException().initCause(ex);
+        } catch (final ExecutionException ex) {
+            cancel();
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new AssertionError(cause);
+        }
+    }
+
+    private void cancel() {
+        for (Future<Block> result; null != (result = blocks.poll()); )
+            result.cancel(true);
+    }
+
+    /**
+     * Deflates the remaining data and writes all deflated blocks to the
+     * decorated output stream.
+     *
+     * @throws IOException on any I/O error.
+     */
+    void finish() throws IOException {
+        if (finished)
+            return;
+        submit(true);
+        writeBlocks(0);
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        assert false : "This method should never get called by the current implementation.";
+        finish();
+        super.close();
+    }
+
+    /** A task for deflating a block of uncompressed data. */
+    private static final class Block implements Callable<Block> {
+        final byte[] in;
+        final int length;
+        final byte[] dict;
+        final int level;
+        final boolean last;
+
+        byte[] out;
+        int outLength;
+        long crc;
+
+        Block(  final byte[] in,
+                final int length,
+                final byte[] dict,
+                final int level,
+                final boolean last) {
+            this.in = in;
+            this.length = length;
+            this.dict = dict;
+            this.level = level;
+            this.last = last;
+        }
+
+        @Override
+        public Block call() {
+            final byte[] in = this.in;
+            final int length = this.length;
+            final CRC32 crc = new CRC32();
+            crc.update(in, 0, length);
+            this.crc = crc.getValue();
+            final Deflater def = FlaterPool.SINGLETON.allocateDeflater(level, true);
+            try {
+                final byte[] dict = this.dict;
+                if (null != dict)
+                    def.setDictionary(dict, dict.length - DICT_SIZE, DICT_SIZE);
+                def.setInput(in, 0, length);
+                if (last)
+                    def.finish();
+                byte[] out = new byte[length + (length >> 3) + 64];
+                int off = 0;
+                while (true) {
+                    final int rem = out.length - off;
+                    final int n = last
+                            ? def.deflate(out, off, rem)
+                            : def.deflate(out, off, rem, Deflater.SYNC_FLUSH);
+                    off += n;
+                    if (last ? def.finished() : n < rem)
+                        break;
+                    if (out.length <= off) {
+                        final byte[] tmp = new byte[out.length * 2];
+                        System.arraycopy(out, 0, tmp, 0, off);
+                        out = tmp;
+                    }
+                }
+                this.out = out;
+                this.outLength = off;
+            } finally {
+                FlaterPool.SINGLETON.release(def);
+            }
+            return this;
+        }
+    } // Block
+}
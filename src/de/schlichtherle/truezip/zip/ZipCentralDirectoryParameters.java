@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.zip;
+
+/**
+ * An interface for parameters which control the representation of the
+ * central directory of a ZIP file in memory.
+ * A {@link RawZipFile} looks up these parameters from the
+ * {@link ZipFileParameters} provided to its constructor, either by
+ * implementing this interface or by providing it via
+ * {@link ZipParametersProvider}.
+ * If no such parameters are available, the central directory gets mounted
+ * as a map of {@link ZipEntry} objects.
+ *
+ * @author  Christian Schlichtherle
+ */
+public interface ZipCentralDirectoryParameters extends ZipParameters {
+
+    /**
+     * Returns {@code true} if and only if the central directory should get
+     * mounted in compact form.
+     * <p>
+     * In compact form, the Central File Headers get kept in a packed byte
+     * array with an open addressing hash index for the entry names.
+     * Entry objects are created on demand by each call to
+     * {@link RawZipFile#getEntry(String)} and each iteration, so they are
+     * not shared anymore.
+     * This reduces the heap memory required for ZIP files with many entries
+     * by an order of magnitude and speeds up mounting them because far less
+     * objects get allocated.
+     * <p>
+     * As a trade-off, accessing an entry is slower and malformed meta data
+     * of an entry gets detected on first access rather than when mounting,
+     * resulting in an {@link IllegalArgumentException}.
+     * Furthermore, the {@link ZipEntryFactory} must not change the names
+     * of the entries.
+     *
+     * @return {@code true} if and only if the central directory should get
+     *         mounted in compact form.
+     */
+    boolean getCompactCentralDirectory();
+
+    /**
+     * Returns the maximum number of threads for parsing the central
+     * directory when mounting a ZIP file.
+     * If this is less than two, then the central directory gets parsed by
+     * the current thread.
+     * <p>
+     * Otherwise, unless the central directory gets mounted in
+     * {@link #getCompactCentralDirectory() compact form}, the Central File
+     * Headers get read into a single buffer first.
+     * Then the entry names and comments get decoded and the extra fields
+     * get parsed in chunks by up to this number of threads.
+     * The order of the entries stays the same.
+     * Note that this requires the {@link ZipEntryFactory} to be thread-safe.
+     *
+     * @return The maximum number of threads for parsing the central
+     *         directory.
+     */
+    int getCentralDirectoryThreads();
+}
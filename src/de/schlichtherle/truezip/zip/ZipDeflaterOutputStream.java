@@ -7,47 +7,41 @@ package de.schlichtherle.truezip.zip;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.zip.Deflater;
-import static java.util.zip.Deflater.DEFAULT_COMPRESSION;
 import java.util.zip.DeflaterOutputStream;
 
 /**
- * A deflater output stream which uses a custom {@link Deflater} and provides
- * access to it.
+ * A deflater output stream which uses a custom {@link Deflater} from the
+ * {@link FlaterPool} and provides access to it.
  *
  * @author  Christian Schlichtherle
  */
 final class ZipDeflaterOutputStream extends DeflaterOutputStream {
 
-    private static final DeflaterFactory factory = new Jdk6DeflaterFactory();
+    private boolean ended;
 
     ZipDeflaterOutputStream(OutputStream out, int level, int size) {
-        super(out, factory.newDeflater(), size);
-        def.setLevel(level);
+        super(out, FlaterPool.SINGLETON.allocateDeflater(level, true), size);
     }
 
     Deflater getDeflater() {
         return def;
     }
 
+    /**
+     * Releases the deflater to the {@link FlaterPool}.
+     * This stream must not get used anymore after calling this method.
+     */
+    void end() {
+        if (ended)
+            return;
+        ended = true;
+        FlaterPool.SINGLETON.release(def);
+    }
+
     @Override
     public void close() throws IOException {
         assert false : "This method should never get called by the current implementation.";
-        def.end();
+        end();
         super.close();
     }
-
-    /** A factory for {@link Deflater} objects. */
-    private static class DeflaterFactory {
-        protected Deflater newDeflater() {
-            return new Deflater(DEFAULT_COMPRESSION, true);
-        }
-    }
-
-    /** A factory for {@link Jdk6Deflater} objects. */
-    private static final class Jdk6DeflaterFactory extends DeflaterFactory {
-        @Override
-        protected Deflater newDeflater() {
-            return new Jdk6Deflater(DEFAULT_COMPRESSION, true);
-        }
-    }
-}
\ No newline at end of file
+}
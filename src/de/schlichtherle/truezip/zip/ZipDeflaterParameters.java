@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2005-2013 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.truezip.zip;
+
+/**
+ * An interface for parameters which control parallel deflating of entries
+ * when writing ZIP files.
+ * A {@link RawZipOutputStream} looks up these parameters from the
+ * {@link ZipOutputStreamParameters} provided to its constructor, either by
+ * implementing this interface or by providing it via
+ * {@link ZipParametersProvider}.
+ * If no such parameters are available, all entries get deflated by the
+ * current thread.
+ *
+ * @author  Christian Schlichtherle
+ */
+public interface ZipDeflaterParameters extends ZipParameters {
+
+    /**
+     * Returns the maximum number of threads for deflating entries in
+     * parallel.
+     * If this is less than two, then all entries get deflated by the
+     * current thread and the other properties of this interface are ignored.
+     * <p>
+     * Otherwise, the uncompressed contents of each DEFLATED entry which is
+     * neither encrypted nor larger than {@link #getDeflaterBufferSize()}
+     * get buffered in memory and deflated by a worker thread while the
+     * current thread continues with writing the next entry.
+     * The compressed data gets written to the ZIP file in the same order as
+     * the entries have been started, so the resulting ZIP file is the same
+     * as if all entries had been deflated by the current thread.
+     *
+     * @return The maximum number of threads for deflating entries in
+     *         parallel.
+     */
+    int getDeflaterThreads();
+
+    /**
+     * Returns the maximum uncompressed size of an entry which may get
+     * buffered in memory for deflating it on a worker thread.
+     * Entries with an unknown or larger size get deflated by the current
+     * thread.
+     * The size of an entry is only a hint, so if more data gets written to
+     * a buffered entry than this, then the entry stops getting buffered and
+     * gets deflated by the current thread, too.
+     * <p>
+     * While writing an entry, the current thread buffers its uncompressed
+     * data and up to {@link #getDeflaterThreads()} previous entries may
+     * be pending, each with its uncompressed data and its compressed data.
+     * So the heap memory required for parallel deflating is bounded by
+     * about {@code (2 * getDeflaterThreads() + 1) * getDeflaterBufferSize()}
+     * bytes.
+     *
+     * @return The maximum uncompressed size of an entry which may get
+     *         buffered in memory for deflating it on a worker thread.
+     */
+    int getDeflaterBufferSize();
+
+    /**
+     * Returns the minimum uncompressed size of an entry for deflating it in
+     * blocks on worker threads.
+     * Entries with a known size which is equal to or larger than this get
+     * split into fixed size blocks which are deflated concurrently by up to
+     * {@link #getDeflaterThreads()} threads and then joined into a single
+     * DEFLATE stream.
+     * This trades a slightly lower compression ratio for a much higher
+     * throughput on multi-core systems.
+     * Return {@link Long#MAX_VALUE} in order to disable this feature.
+     *
+     * @return The minimum uncompressed size of an entry for deflating it in
+     *         blocks on worker threads.
+     */
+    long getBlockDeflaterThreshold();
+}
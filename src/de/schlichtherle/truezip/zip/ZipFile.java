@@ -5,6 +5,7 @@
 package de.schlichtherle.truezip.zip;
 
 import de.schlichtherle.truezip.rof.DefaultReadOnlyFile;
+import de.schlichtherle.truezip.rof.MappedReadOnlyFile;
 import de.schlichtherle.truezip.rof.ReadOnlyFile;
 import de.schlichtherle.truezip.util.Pool;
 import java.io.File;
@@ -102,7 +103,8 @@ public class ZipFile extends RawZipFile<ZipEntry> {
             final boolean postambled)
     throws IOException {
         super(  new DefaultReadOnlyFilePool(path),
-                new DefaultZipFileParameters(charset, preambled, postambled));
+                new DefaultZipFileParameters(charset, preambled, postambled),
+                new File(path));
         this.name = path;
     }
 
@@ -156,14 +158,46 @@ public class ZipFile extends RawZipFile<ZipEntry> {
      * @throws IOException on any other I/O related issue.
      * @see    #recoverLostEntries()
      */
+    public ZipFile(
+            File file,
+            Charset charset,
+            boolean preambled,
+            boolean postambled)
+    throws IOException {
+        this(file, charset, preambled, postambled, false);
+    }
+
+    /**
+     * Opens the given {@link File} for reading its entries.
+     *
+     * @param file the file.
+     * @param charset the charset to use for decoding entry names and ZIP file
+     *        comment.
+     * @param preambled see {@link #ZipFile(File, Charset, boolean, boolean)}.
+     * @param postambled see {@link #ZipFile(File, Charset, boolean, boolean)}.
+     * @param compact if this is {@code true}, then the central directory gets
+     *        mounted in compact form.
+     *        This reduces the heap memory required for ZIP files with many
+     *        entries, but the returned entries are not shared anymore.
+     *        See {@link ZipCentralDirectoryParameters#getCompactCentralDirectory()}.
+     * @throws FileNotFoundException if {@code file} cannot get opened for
+     *         reading.
+     * @throws ZipException if {@code file} is not compatible with the ZIP
+     *         File Format Specification.
+     * @throws IOException on any other I/O related issue.
+     * @see    #recoverLostEntries()
+     */
     public ZipFile(
             final File file,
             final Charset charset,
             final boolean preambled,
-            final boolean postambled)
+            final boolean postambled,
+            final boolean compact)
     throws IOException {
         super(  new DefaultReadOnlyFilePool(file),
-                new DefaultZipFileParameters(charset, preambled, postambled));
+                new DefaultZipFileParameters(
+                    charset, preambled, postambled, compact),
+                file);
         this.name = file.toString();
     }
 
@@ -360,8 +394,11 @@ public class ZipFile extends RawZipFile<ZipEntry> {
     }
 
     /**
-     * A pool which allocates {@link DefaultReadOnlyFile} objects for the
-     * file provided to its constructor.
+     * A pool which allocates {@link DefaultReadOnlyFile} or
+     * {@link MappedReadOnlyFile} objects for the file provided to its
+     * constructor, depending on its length.
+     *
+     * @see MappedReadOnlyFile#newReadOnlyFile(File)
      */
     private static final class DefaultReadOnlyFilePool
     implements Pool<ReadOnlyFile, IOException> {
@@ -377,7 +414,7 @@ public class ZipFile extends RawZipFile<ZipEntry> {
 
         @Override
         public ReadOnlyFile allocate() throws IOException {
-            return new DefaultReadOnlyFile(file);
+            return MappedReadOnlyFile.newReadOnlyFile(file);
         }
 
         @Override
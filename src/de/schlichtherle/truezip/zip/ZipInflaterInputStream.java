@@ -9,17 +9,17 @@ import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 /**
- * An inflater input stream which uses a custom {@link Inflater} and provides
- * access to it.
+ * An inflater input stream which uses a custom {@link Inflater} from the
+ * {@link FlaterPool} and provides access to it.
  *
  * @author  Christian Schlichtherle
  */
 final class ZipInflaterInputStream extends InflaterInputStream {
 
-    private static final InflaterFactory factory = new Jdk6InflaterFactory();
+    private boolean ended;
 
     ZipInflaterInputStream(DummyByteInputStream in, int size) {
-        super(in, factory.newInflater(), size);
+        super(in, FlaterPool.SINGLETON.allocateInflater(true), size);
     }
 
     Inflater getInflater() {
@@ -29,21 +29,9 @@ final class ZipInflaterInputStream extends InflaterInputStream {
     @Override
     public void close() throws IOException {
         super.close();
-        inf.end();
+        if (ended)
+            return;
+        ended = true;
+        FlaterPool.SINGLETON.release(inf);
     }
-
-    /** A factory for {@link Inflater} objects. */
-    private static class InflaterFactory {
-        protected Inflater newInflater() {
-            return new Inflater(true);
-        }
-    }
-
-    /** A factory for {@link Jdk6Inflater} objects. */
-    private static final class Jdk6InflaterFactory extends InflaterFactory {
-        @Override
-        protected Inflater newInflater() {
-            return new Jdk6Inflater(true);
-        }
-    }
-}
\ No newline at end of file
+}
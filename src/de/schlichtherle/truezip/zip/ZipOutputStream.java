@@ -7,6 +7,7 @@ package de.schlichtherle.truezip.zip;
 import de.schlichtherle.truezip.util.HashMaps;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.*;
 
@@ -276,6 +277,15 @@ public class ZipOutputStream extends RawZipOutputStream<ZipEntry> {
         super.write(b, off, len);
     }
 
+    @Override
+    public synchronized long transferFrom(
+            FileChannel src,
+            long position,
+            long count)
+    throws IOException {
+        return super.transferFrom(src, position, count);
+    }
+
     @Override
     public synchronized void closeEntry() throws IOException {
         super.closeEntry();